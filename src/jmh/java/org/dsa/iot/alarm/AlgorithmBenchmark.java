@@ -0,0 +1,99 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.concurrent.TimeUnit;
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.value.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluations per second of each algorithm type, against a detached watch whose current
+ * value is a property.  Run with gradle jmh.
+ *
+ * @author Aaron Hansen
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+public class AlgorithmBenchmark {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private BooleanAlgorithm booleanAlgorithm;
+    private AlarmWatch booleanWatch;
+    private OutOfRangeAlgorithm outOfRangeAlgorithm;
+    private AlarmWatch outOfRangeWatch;
+    private StaleAlgorithm staleAlgorithm;
+    private AlarmWatch staleWatch;
+    private StringAlgorithm stringAlgorithm;
+    private AlarmWatch stringWatch;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Benchmark
+    public boolean booleanAlgorithm() {
+        return booleanAlgorithm.isAlarm(booleanWatch);
+    }
+
+    @Benchmark
+    public boolean outOfRangeAlgorithm() {
+        return outOfRangeAlgorithm.isAlarm(outOfRangeWatch);
+    }
+
+    @Setup
+    public void setup() {
+        booleanAlgorithm = new BooleanAlgorithm();
+        booleanAlgorithm.init(new Node("Boolean", null, null));
+        booleanWatch = newWatch(new Value(false));
+        outOfRangeAlgorithm = new OutOfRangeAlgorithm();
+        outOfRangeAlgorithm.init(new Node("Out of Range", null, null));
+        outOfRangeWatch = newWatch(new Value(50.0d));
+        staleAlgorithm = new StaleAlgorithm();
+        staleAlgorithm.init(new Node("Stale", null, null));
+        staleWatch = newWatch(new Value(0));
+        stringAlgorithm = new StringAlgorithm();
+        stringAlgorithm.init(new Node("String", null, null));
+        stringWatch = newWatch(new Value("normal"));
+    }
+
+    @Benchmark
+    public boolean staleAlgorithm() {
+        return staleAlgorithm.isAlarm(staleWatch);
+    }
+
+    @Benchmark
+    public boolean stringAlgorithm() {
+        return stringAlgorithm.isAlarm(stringWatch);
+    }
+
+    private static AlarmWatch newWatch(Value currentValue) {
+        AlarmWatch watch = new AlarmWatch();
+        watch.init(new Node("Watch", null, null));
+        watch.initProperty(AlarmWatch.CURRENT_VALUE, currentValue);
+        return watch;
+    }
+
+}
@@ -0,0 +1,146 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.concurrent.TimeUnit;
+import org.dsa.iot.dslink.DSLinkHandler;
+import org.dsa.iot.dslink.link.Requester;
+import org.dsa.iot.dslink.node.value.SubscriptionValue;
+import org.dsa.iot.dslink.util.handler.Handler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for the subscriptions of a large number of watches to settle at startup, against
+ * a stand-in requester that only counts requests.  Every TICK_MILLIS the batch is issued
+ * the way the service does, so the result is dominated by the rate ramp.  Four watches
+ * share each path.  Run with gradle jmh.
+ *
+ * @author Aaron Hansen
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Measurement(iterations = 3)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 1)
+public class SubscriptionBenchmark {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Param({"2000"})
+    public int rateMax;
+
+    @Param({"200"})
+    public int rateStart;
+
+    @Param({"80000"})
+    public int watches;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Subscribes every watch then issues batches until the queue drains.
+     *
+     * @return The number of requester subscriptions issued.
+     */
+    @Benchmark
+    public int startup() throws InterruptedException {
+        StandInSubscriptions subscriptions = new StandInSubscriptions();
+        subscriptions.setRates(rateStart, rateMax);
+        for (int i = 0; i < watches; i++) {
+            subscriptions.subscribe(new StandInWatch(), "/downstream/points/" + (i / 4));
+        }
+        while (subscriptions.getPending() > 0) {
+            subscriptions.run();
+            Thread.sleep(AlarmSubscriptions.TICK_MILLIS);
+        }
+        if (subscriptions.subscribed != subscriptions.getActive()) {
+            throw new IllegalStateException("Issued " + subscriptions.subscribed
+                                                    + ", active " + subscriptions.getActive());
+        }
+        return subscriptions.subscribed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A service that only provides a requester, which is never used.
+     */
+    private static class StandInService extends AlarmService {
+
+        private Requester requester = new Requester(new DSLinkHandler() {
+        });
+
+        @Override
+        Requester getRequester() {
+            return requester;
+        }
+
+    }
+
+    /**
+     * Counts subscribe requests instead of sending them, and never delivers values.
+     */
+    private static class StandInSubscriptions extends AlarmSubscriptions {
+
+        int subscribed;
+
+        StandInSubscriptions() {
+            super(new StandInService());
+        }
+
+        @Override
+        void issueSubscribe(Requester requester, String path,
+                            Handler<SubscriptionValue> handler) {
+            subscribed++;
+        }
+
+        @Override
+        void issueUnsubscribe(Requester requester, String path,
+                              Handler<SubscriptionValue> handler) {
+            subscribed--;
+        }
+
+    }
+
+    /**
+     * Ignores everything.
+     */
+    private static class StandInWatch implements AlarmSubscriber {
+
+        @Override
+        public void handle(SubscriptionValue value) {
+        }
+
+        @Override
+        public void setSubscriptionHealth(String health) {
+        }
+
+        @Override
+        public void subscriptionIssued() {
+        }
+
+    }
+
+}
@@ -23,16 +23,25 @@ public abstract class AbstractProvider implements Alarming.Provider {
     // Constants
     ///////////////////////////////////////////////////////////////////////////
 
+    private static final int RECORD_LOCKS = 64;
+
     ///////////////////////////////////////////////////////////////////////////
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private final Object[] recordLocks = new Object[RECORD_LOCKS];
     protected AlarmService service;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
 
+    public AbstractProvider() {
+        for (int i = 0; i < RECORD_LOCKS; i++) {
+            recordLocks[i] = new Object();
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Methods
     ///////////////////////////////////////////////////////////////////////////
@@ -43,35 +52,49 @@ public abstract class AbstractProvider implements Alarming.Provider {
      */
     @Override
     public void acknowledge(UUID uuid, String user) {
-        AlarmRecord rec = getAlarm(uuid);
-        if (rec == null) {
-            return;
-        }
         if (user == null) {
             throw new NullPointerException("User");
         }
-        AlarmUtil.logInfo("Acknowledge " + uuid + " by " + user);
-        if (rec.getAckTime() <= 0) {
-            rec.setAckTime(System.currentTimeMillis());
-            rec.setAckUser(user);
-            saveRecord(rec);
+        synchronized (getRecordLock(uuid)) {
+            AlarmRecord rec = getAlarm(uuid);
+            if (rec == null) {
+                return;
+            }
+            AlarmUtil.logInfo("Acknowledge " + uuid + " by " + user);
+            if (rec.getAckTime() <= 0) {
+                rec.setAckTime(System.currentTimeMillis());
+                rec.setAckUser(user);
+                rec.setSequence(nextSequence());
+                saveChange(rec, AlarmEvent.make(AlarmEvent.ACKNOWLEDGE, rec).setUser(user));
+            }
         }
     }
 
     /**
      * {@inheritDoc} <p/>
-     * This implementation configures the alarm record and calls saveRecord, then
-     * calls doAddNote.
+     * This implementation configures the alarm record and the note, then calls
+     * addNote(Note, AlarmRecord, AlarmEvent).
      */
     @Override
     public void addNote(UUID uuid, String user, String note) {
-        AlarmRecord rec = getAlarm(uuid);
-        if (!rec.hasNotes()) {
+        synchronized (getRecordLock(uuid)) {
+            AlarmRecord rec = getAlarm(uuid);
             rec.setHasNotes(true);
-            saveRecord(rec);
+            rec.setSequence(nextSequence());
+            AlarmEvent event = AlarmEvent.make(AlarmEvent.NOTE, rec)
+                                         .setUser(user)
+                                         .setDetail(note);
+            boolean saved = false;
+            try {
+                addNote(new Note(uuid).setUser(user).setText(note)
+                                      .setTimestamp(System.currentTimeMillis()),
+                        rec,
+                        event);
+                saved = true;
+            } finally {
+                complete(rec.getSequence(), saved ? rec : null, saved ? event : null);
+            }
         }
-        addNote(new Note(uuid).setUser(user).setText(note)
-                              .setTimestamp(System.currentTimeMillis()));
     }
 
     /**
@@ -83,7 +106,11 @@ public abstract class AbstractProvider implements Alarming.Provider {
     public Map<String, Class> getAlarmAlgorithms() {
         TreeMap<String, Class> ret = new TreeMap<>();
         ret.put("Boolean Algorithm", BooleanAlgorithm.class);
+        ret.put("Composite Algorithm", CompositeAlgorithm.class);
+        ret.put("Deviation Algorithm", DeviationAlgorithm.class);
+        ret.put("Expression Algorithm", ExpressionAlgorithm.class);
         ret.put("Out of Range Algorithm", OutOfRangeAlgorithm.class);
+        ret.put("Rate of Change Algorithm", RateOfChangeAlgorithm.class);
         ret.put("Stale Algorithm", StaleAlgorithm.class);
         ret.put("String Algorithm", StringAlgorithm.class);
         return ret;
@@ -116,20 +143,49 @@ public abstract class AbstractProvider implements Alarming.Provider {
         return new AlarmService();
     }
 
+    /**
+     * {@inheritDoc} <p/>
+     * This implementation configures the alarm record and calls saveRecord.
+     */
+    @Override
+    public void reopen(UUID uuid) {
+        if (uuid == null) {
+            throw new NullPointerException("UUID");
+        }
+        synchronized (getRecordLock(uuid)) {
+            AlarmRecord rec = getAlarm(uuid);
+            if ((rec == null) || !rec.isNormal()) {
+                return;
+            }
+            AlarmUtil.logInfo("Reopen " + uuid);
+            rec.setNormalTime(0);
+            rec.setAckTime(0);
+            rec.setAckUser(null);
+            rec.setOccurrences(rec.getOccurrences() + 1);
+            rec.setLastOccurrence(System.currentTimeMillis());
+            rec.setSequence(nextSequence());
+            saveChange(rec, AlarmEvent.make(AlarmEvent.REOPEN, rec)
+                                      .setDetail("Occurrence " + rec.getOccurrences()));
+        }
+    }
+
     /**
      * {@inheritDoc} <p/>
      * This implementation configures the alarm record and calls saveRecord.
      */
     @Override
     public void returnToNormal(UUID uuid) {
-        AlarmRecord rec = getAlarm(uuid);
         if (uuid == null) {
             throw new NullPointerException("UUID");
         }
-        AlarmUtil.logInfo("Return to normal " + uuid);
-        if (rec.getNormalTime() <= 0) {
-            rec.setNormalTime(System.currentTimeMillis());
-            saveRecord(rec);
+        synchronized (getRecordLock(uuid)) {
+            AlarmRecord rec = getAlarm(uuid);
+            AlarmUtil.logInfo("Return to normal " + uuid);
+            if (rec.getNormalTime() <= 0) {
+                rec.setNormalTime(System.currentTimeMillis());
+                rec.setSequence(nextSequence());
+                saveChange(rec, AlarmEvent.make(AlarmEvent.NORMAL, rec));
+            }
         }
     }
 
@@ -156,6 +212,41 @@ public abstract class AbstractProvider implements Alarming.Provider {
      */
     protected abstract void addNote(Note note);
 
+    /**
+     * Called by addNote(UUID,String,String) with the record already updated to indicate
+     * it has notes.  This implementation calls saveRecord then addNote(Note).  Subclasses
+     * with transactions should override to store all three at once.  The caller completes
+     * the sequence number of the record and event.
+     */
+    protected void addNote(Note note, AlarmRecord record, AlarmEvent event) {
+        saveRecord(record);
+        addNote(note);
+    }
+
+    /**
+     * Subclasses must call with every number from nextSequence, once the mutation has been
+     * persisted or has failed, so that it can be added to the change log and streamed to
+     * interested clients in sequence order.
+     *
+     * @param sequence From nextSequence.
+     * @param record   Optional, the mutated record, or null if the mutation failed.
+     * @param event    Optional, the persisted event, or null if the mutation failed.
+     */
+    protected void complete(long sequence, AlarmRecord record, AlarmEvent event) {
+        if ((service != null) && (sequence > 0)) {
+            service.completeSequence(sequence, record, event);
+        }
+    }
+
+    /**
+     * Acknowledge, add note, reopen and return to normal read the record, modify it, then
+     * save every mutable column.  They hold this lock throughout so concurrent mutations
+     * of the same record can't overwrite each other with stale copies.
+     */
+    protected Object getRecordLock(UUID uuid) {
+        return recordLocks[(uuid.hashCode() & 0x7fffffff) % RECORD_LOCKS];
+    }
+
     /**
      * The service passed to the start method.
      */
@@ -163,11 +254,56 @@ public abstract class AbstractProvider implements Alarming.Provider {
         return service;
     }
 
+    /**
+     * Reserves the next change sequence number from the service, it must be passed to
+     * complete.
+     */
+    protected long nextSequence() {
+        if (service == null) {
+            return 0;
+        }
+        return service.nextSequence();
+    }
+
     /**
      * Called by various methods in the abstract implementation.
      */
     protected abstract void saveRecord(AlarmRecord alarmRecord);
 
+    /**
+     * Called by various methods in the abstract implementation when a mutation should
+     * also be recorded as an event.  This implementation calls saveRecord(AlarmRecord).
+     * Subclasses with transactions should override to store both at once.  The caller
+     * completes the sequence number of the record and event.
+     */
+    protected void saveRecord(AlarmRecord alarmRecord, AlarmEvent event) {
+        saveRecord(alarmRecord);
+    }
+
+    /**
+     * Subclasses should call this with the last sequence number found in persistent
+     * storage so that new sequence numbers will be greater.
+     */
+    protected void seedSequence(long sequence) {
+        if (service != null) {
+            service.seedSequence(sequence);
+        }
+    }
+
+    /**
+     * Calls saveRecord(AlarmRecord, AlarmEvent) then completes the sequence number the
+     * record was assigned, even if the save fails.
+     */
+    private void saveChange(AlarmRecord record, AlarmEvent event) {
+        boolean saved = false;
+        try {
+            saveRecord(record, event);
+            saved = true;
+        } finally {
+            complete(record.getSequence(), saved ? record : null, saved ? event : null);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Inner Classes
     ///////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,174 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable Aho-Corasick automaton for finding whether a string contains any of a set
+ * of patterns in a single pass, regardless of how many patterns there are.  Safe for use
+ * by multiple threads once constructed.
+ *
+ * @author Aaron Hansen
+ */
+class AhoCorasick {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private State root = new State();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param patterns Empty patterns are ignored.
+     */
+    AhoCorasick(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            if ((pattern == null) || pattern.isEmpty()) {
+                continue;
+            }
+            State state = root;
+            for (int i = 0, len = pattern.length(); i < len; i++) {
+                state = state.add(pattern.charAt(i));
+            }
+            state.output = true;
+        }
+        root.freeze();
+        linkFailures();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * True if any pattern occurs in the text.
+     */
+    boolean containsAny(CharSequence text) {
+        State state = root;
+        State next;
+        char ch;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            ch = text.charAt(i);
+            while (((next = state.next(ch)) == null) && (state != root)) {
+                state = state.failure;
+            }
+            if (next != null) {
+                state = next;
+            }
+            if (state.output) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Breadth first, sets the failure link of each state to the longest proper suffix
+     * that is also in the trie, and marks states whose suffixes end a pattern.
+     */
+    private void linkFailures() {
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        root.failure = root;
+        for (State child : root.children) {
+            child.failure = root;
+            queue.add(child);
+        }
+        State state, fail, next;
+        while ((state = queue.poll()) != null) {
+            for (int i = 0; i < state.keys.length; i++) {
+                next = state.children[i];
+                fail = state.failure;
+                while ((fail.next(state.keys[i]) == null) && (fail != root)) {
+                    fail = fail.failure;
+                }
+                next.failure = fail.next(state.keys[i]);
+                if ((next.failure == null) || (next.failure == next)) {
+                    next.failure = root;
+                }
+                if (next.failure.output) {
+                    next.output = true;
+                }
+                queue.add(next);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A node of the trie.  Transitions are kept in sorted parallel arrays.
+     */
+    private static class State {
+
+        TreeMap<Character, State> building; //only during construction
+        State[] children = new State[0];
+        State failure;
+        char[] keys = new char[0];
+        boolean output;
+
+        State add(char ch) {
+            if (building == null) {
+                building = new TreeMap<>();
+            }
+            State ret = building.get(ch);
+            if (ret == null) {
+                ret = new State();
+                building.put(ch, ret);
+            }
+            return ret;
+        }
+
+        /**
+         * Moves the transitions of this state and its descendants into the arrays.
+         */
+        void freeze() {
+            if (building == null) {
+                return;
+            }
+            keys = new char[building.size()];
+            children = new State[building.size()];
+            int i = 0;
+            for (Map.Entry<Character, State> e : building.entrySet()) {
+                keys[i] = e.getKey();
+                children[i] = e.getValue();
+                children[i++].freeze();
+            }
+            building = null;
+        }
+
+        State next(char ch) {
+            int lo = 0;
+            int hi = keys.length - 1;
+            int mid;
+            while (lo <= hi) {
+                mid = (lo + hi) >>> 1;
+                if (keys[mid] < ch) {
+                    lo = mid + 1;
+                } else if (keys[mid] > ch) {
+                    hi = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -8,8 +8,8 @@
 
 package org.dsa.iot.alarm;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.UUID;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.dsa.iot.dslink.node.Node;
@@ -43,6 +43,10 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
     ///////////////////////////////////////////////////////////////////////////
 
     private static final String AUTO_UPDATE_INTERVAL = "Auto Update Interval";
+    private static final String CHATTER_QUIET_PERIOD = "Chatter Quiet Period";
+    private static final String CHATTER_THRESHOLD = "Chatter Threshold";
+    private static final String CHATTER_WINDOW = "Chatter Window";
+    private static final String COALESCE_WINDOW = "Coalesce Window";
     private static final String TO_ALARM_INHIBIT = "To Alarm Inhibit";
     private static final String TO_NORMAL_INHIBIT = "To Normal Inhibit";
 
@@ -50,8 +54,8 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
-    private AlarmState alarmType; //only subset: alert, fault or offnormal
     private ScheduledFuture autoUpdateFuture;
+    private volatile Settings settings;
     private boolean updatingAll = false;
 
     ///////////////////////////////////////////////////////////////////////////
@@ -141,25 +145,51 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
      * Alert, Fault, or Offnormal.
      */
     protected AlarmState getAlarmType() {
-        if (alarmType == null) {
-            String str = getProperty(ALARM_TYPE).getString();
-            alarmType = AlarmState.decode(str);
-        }
-        return alarmType;
+        return getSettings().alarmType;
+    }
+
+    /**
+     * The number of transitions allowed within the chatter window, 0 disables chatter
+     * detection.
+     */
+    protected int getChatterThreshold() {
+        return getSettings().chatterThreshold;
+    }
+
+    /**
+     * How long in millis a chattering watch must be stable before its record is released.
+     */
+    protected long getChatterQuietPeriod() {
+        return getSettings().chatterQuietPeriod;
+    }
+
+    /**
+     * The sliding window in millis that transitions are counted in.
+     */
+    protected long getChatterWindow() {
+        return getSettings().chatterWindow;
+    }
+
+    /**
+     * If a watch re-alarms within this many millis of its last record returning to
+     * normal, that record is reopened instead of creating a new one.  0 disables.
+     */
+    protected long getCoalesceWindow() {
+        return getSettings().coalesceWindow;
     }
 
     /**
      * The to alarm inhibit time in millis.
      */
     protected long getToAlarmInhibit() {
-        return getProperty(TO_ALARM_INHIBIT).getNumber().longValue() * 1000l;
+        return getSettings().toAlarmInhibit;
     }
 
     /**
      * The to normal inhibit time in millis.
      */
     protected long getToNormalInhibit() {
-        return getProperty(TO_NORMAL_INHIBIT).getNumber().longValue() * 1000l;
+        return getSettings().toNormalInhibit;
     }
 
     @Override
@@ -179,6 +209,26 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         node.createChild("Add Watch", false).setSerializable(false).setAction(action).build();
         //Delete
         addDeleteAction("Delete Algorithm");
+        //Shelve
+        action = new Action(Permission.WRITE, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                shelve(event);
+            }
+        });
+        action.addParameter(
+                new Parameter(AlarmWatch.HOURS, ValueType.NUMBER, new Value(8)));
+        action.addParameter(new Parameter(USER, ValueType.STRING, new Value("")));
+        node.createChild("Shelve", false).setSerializable(false).setAction(action).build();
+        //Unshelve
+        action = new Action(Permission.WRITE, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                unshelve(event);
+            }
+        });
+        action.addParameter(new Parameter(USER, ValueType.STRING, new Value("")));
+        node.createChild("Unshelve", false).setSerializable(false).setAction(action).build();
         //Update All
         action = new Action(Permission.WRITE, new Handler<ActionResult>() {
             @Override
@@ -204,6 +254,16 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         initProperty(TO_NORMAL_INHIBIT, new Value(0)).createFakeBuilder()
                                                      .setConfig("unit", new Value("sec"))
                                                      .setWritable(Writable.CONFIG);
+        initProperty(COALESCE_WINDOW, new Value(0)).createFakeBuilder()
+                                                   .setConfig("unit", new Value("sec"))
+                                                   .setWritable(Writable.CONFIG);
+        initProperty(CHATTER_THRESHOLD, new Value(0)).setWritable(Writable.CONFIG);
+        initProperty(CHATTER_WINDOW, new Value(60)).createFakeBuilder()
+                                                   .setConfig("unit", new Value("sec"))
+                                                   .setWritable(Writable.CONFIG);
+        initProperty(CHATTER_QUIET_PERIOD, new Value(60)).createFakeBuilder()
+                                                         .setConfig("unit", new Value("sec"))
+                                                         .setWritable(Writable.CONFIG);
     }
 
     /**
@@ -212,8 +272,13 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
      */
     protected abstract boolean isAlarm(AlarmWatch watch);
 
+    /**
+     * Recompiles the settings snapshot, subclasses must call super.
+     */
     @Override
     protected void onPropertyChange(Node node, ValuePair valuePair) {
+        //Before steady, the snapshot is compiled on first use.
+        settings = isSteady() ? new Settings(this) : null;
         if (isSteady()) {
             if (AUTO_UPDATE_INTERVAL.equals(node.getName())) {
                 AlarmUtil.enqueue(new Runnable() {
@@ -224,9 +289,6 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
                 }, 500);
                 rescheduleAutoUpdate();
             }
-            if (ALARM_TYPE.equals(node.getName())) {
-                alarmType = null;
-            }
         }
     }
 
@@ -246,7 +308,7 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
     }
 
     /**
-     * Updates the alarm state for all child watches.
+     * Queues an evaluation of every child watch on its evaluation lane.
      */
     protected void updateAll() {
         synchronized (this) {
@@ -260,8 +322,7 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
             for (int i = 0, len = childCount(); i < len; i++) {
                 child = getChild(i);
                 if (child instanceof AlarmWatch) {
-                    update(((AlarmWatch) child));
-                    Thread.yield();
+                    ((AlarmWatch) child).scheduleEvaluation();
                 }
             }
         } finally {
@@ -294,36 +355,38 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         }
         watch.setAlarmDetected(state != AlarmState.NORMAL);
         if (state == watch.getAlarmState()) {
+            watch.cancelInhibitTimeout();
             return;
         }
+        long inhibit;
         if (state == AlarmState.NORMAL) {
-            long inhibit = getToNormalInhibit();
-            if ((inhibit > 0) && (watch.getAlarmDetectedStateElapsedTime() < inhibit)) {
-                return;
-            }
+            inhibit = getToNormalInhibit();
         } else {
-            long inhibit = getToAlarmInhibit();
-            if ((inhibit > 0) && (watch.getAlarmDetectedStateElapsedTime() < inhibit)) {
+            inhibit = getToAlarmInhibit();
+        }
+        if (inhibit > 0) {
+            long elapsed = watch.getAlarmDetectedStateElapsedTime();
+            if (elapsed < inhibit) {
+                //Re-evaluate exactly when the inhibit expires rather than waiting for
+                //the next cov or auto update.
+                watch.scheduleInhibitTimeout(inhibit - elapsed);
                 return;
             }
         }
+        watch.cancelInhibitTimeout();
+        if (checkChatter(state, watch)) {
+            watch.setAlarmState(state);
+            return;
+        }
         watch.setAlarmState(state);
         if (state == AlarmState.NORMAL) {
             AlarmRecord rec = watch.getLastAlarmRecord();
             if (rec != null) {
-                UUID uuid = rec.getUuid();
-                service.returnToNormal(uuid);
-                alarmClass.notifyAllUpdates(Alarming.getProvider().getAlarm(uuid));
+                //Notifies the update streams.
+                service.returnToNormal(rec.getUuid());
             }
         } else {
-            AlarmRecord rec = service.createAlarm(getAlarmClass(),
-                                                  watch,
-                                                  watch.getSourcePath(),
-                                                  state,
-                                                  getAlarmMessage(watch));
-            watch.setLastAlarmUuid(rec.getUuid());
-            alarmClass.notifyNewRecord(rec);
-            alarmClass.notifyAllUpdates(rec);
+            createRecord(state, watch);
         }
     }
 
@@ -335,6 +398,21 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         return AlarmWatch.class;
     }
 
+    /**
+     * Creates a record for a watch that is in alarm but doesn't have an open record, such
+     * as when it is unshelved.  Must be called on the evaluation lane of the watch.
+     */
+    void annunciate(AlarmWatch watch) {
+        AlarmState state = watch.getAlarmState();
+        if ((state == AlarmState.NORMAL) || !isValid() || !getService().isValid()) {
+            return;
+        }
+        AlarmRecord rec = watch.getLastAlarmRecord();
+        if ((rec == null) || rec.isNormal()) {
+            createRecord(state, watch);
+        }
+    }
+
     /**
      * A convenience that casts the parent.
      */
@@ -355,6 +433,105 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         }
     }
 
+    /**
+     * Counts the transition of the watch.  Once there are more transitions in the chatter
+     * window than the threshold the watch is chattering: transitions only change the
+     * state of the watch, the open record is held until the watch has been stable for the
+     * quiet period.
+     *
+     * @return True if the transition should not create or close a record.
+     */
+    private boolean checkChatter(AlarmState state, final AlarmWatch watch) {
+        int threshold = getChatterThreshold();
+        if (threshold <= 0) {
+            if (watch.isChattering()) {
+                watch.cancelQuietTimeout();
+                endChatter(watch);
+            }
+            return false;
+        }
+        boolean chatter = watch.recordTransition(getChatterWindow(), threshold);
+        boolean starting = false;
+        if (!watch.isChattering()) {
+            if (!chatter) {
+                return false;
+            }
+            AlarmUtil.logInfo(watch.getNode().getPath() + " is chattering");
+            watch.setChattering(true);
+            starting = true;
+        }
+        final Runnable endChatter = new Runnable() {
+            @Override
+            public void run() {
+                endChatter(watch);
+            }
+        };
+        watch.scheduleQuietTimeout(new Runnable() {
+            @Override
+            public void run() {
+                getService().executeOnLane(watch, endChatter);
+            }
+        }, getChatterQuietPeriod());
+        //A chatter that begins with a transition to alarm needs a new record to hold.
+        return !starting || (state == AlarmState.NORMAL);
+    }
+
+    /**
+     * Creates the record for a watch that transitioned to alarm, unless the watch is
+     * shelved or the record is suppressed by flood protection.  A record that returned
+     * to normal within the coalesce window is reopened instead.
+     */
+    private void createRecord(AlarmState state, AlarmWatch watch) {
+        if (watch.isShelved()) {
+            //Don't let a later return to normal close an older record.
+            watch.setLastAlarmUuid(null);
+            return;
+        }
+        long window = getCoalesceWindow();
+        if (window > 0) {
+            AlarmRecord last = watch.getLastAlarmRecord();
+            if ((last != null) && last.isNormal()
+                    && ((System.currentTimeMillis() - last.getNormalTime()) < window)) {
+                getService().reopen(last.getUuid());
+                return;
+            }
+        }
+        AlarmRecord rec = getService().createAlarm(getAlarmClass(),
+                                                   watch,
+                                                   watch.getSourcePath(),
+                                                   state,
+                                                   getAlarmMessage(watch));
+        if (rec == null) {
+            //Suppressed by flood protection, same as above.
+            watch.setLastAlarmUuid(null);
+            return;
+        }
+        watch.setLastAlarmUuid(rec.getUuid());
+        AlarmClass alarmClass = getAlarmClass();
+        alarmClass.notifyNewRecord(rec);
+        alarmClass.notifyAllUpdates(rec);
+    }
+
+    /**
+     * Called when a chattering watch has been stable for the quiet period.  If the watch
+     * settled in normal, the held record returns to normal, otherwise it remains open.
+     * Must be called on the evaluation lane of the watch.
+     */
+    private void endChatter(AlarmWatch watch) {
+        if (!watch.isChattering()) {
+            return;
+        }
+        watch.setChattering(false);
+        AlarmUtil.logInfo(watch.getNode().getPath() + " stopped chattering");
+        if (watch.getAlarmState() != AlarmState.NORMAL) {
+            return;
+        }
+        AlarmRecord rec = watch.getLastAlarmRecord();
+        if ((rec != null) && !rec.isNormal()) {
+            getService().returnToNormal(rec.getUuid());
+        }
+    }
+
     /**
      * Cancels an existing timer, then schedules a new one if the auto update interval
      * is greater than zero.
@@ -372,4 +549,91 @@ public abstract class AlarmAlgorithm extends AbstractAlarmObject implements Runn
         }
     }
 
+    /**
+     * The compiled configuration, so evaluations only read fields.
+     */
+    private Settings getSettings() {
+        Settings ret = settings;
+        if (ret == null) {
+            ret = new Settings(this);
+            settings = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Action handler, shelves all child watches.
+     */
+    private void shelve(ActionResult event) {
+        try {
+            Value hours = event.getParameter(AlarmWatch.HOURS);
+            if ((hours == null) || (hours.getNumber() == null)) {
+                throw new IllegalArgumentException("Missing " + AlarmWatch.HOURS);
+            }
+            Value user = event.getParameter(USER);
+            long duration = (long) (hours.getNumber().doubleValue() * 3600000d);
+            ArrayList<AlarmWatch> watches = new ArrayList<>();
+            getWatches(watches);
+            for (AlarmWatch watch : watches) {
+                watch.shelve(duration, user == null ? null : user.getString());
+            }
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+            AlarmUtil.throwRuntime(x);
+        }
+    }
+
+    /**
+     * Action handler, unshelves all child watches.  Records for watches in alarm are
+     * created on their evaluation lanes.
+     */
+    private void unshelve(ActionResult event) {
+        try {
+            Value user = event.getParameter(USER);
+            ArrayList<AlarmWatch> watches = new ArrayList<>();
+            getWatches(watches);
+            for (AlarmWatch watch : watches) {
+                watch.unshelve(user == null ? null : user.getString());
+            }
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+            AlarmUtil.throwRuntime(x);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An immutable snapshot of the configuration used on every evaluation.  Durations
+     * are in millis.
+     */
+    private static class Settings {
+
+        final AlarmState alarmType; //only subset: alert, fault or offnormal
+        final long chatterQuietPeriod;
+        final int chatterThreshold;
+        final long chatterWindow;
+        final long coalesceWindow;
+        final long toAlarmInhibit;
+        final long toNormalInhibit;
+
+        Settings(AlarmAlgorithm algorithm) {
+            alarmType = AlarmState.decode(algorithm.getProperty(ALARM_TYPE).getString());
+            chatterQuietPeriod = millis(algorithm, CHATTER_QUIET_PERIOD);
+            chatterThreshold = algorithm.getProperty(CHATTER_THRESHOLD).getNumber()
+                                        .intValue();
+            chatterWindow = millis(algorithm, CHATTER_WINDOW);
+            coalesceWindow = millis(algorithm, COALESCE_WINDOW);
+            toAlarmInhibit = millis(algorithm, TO_ALARM_INHIBIT);
+            toNormalInhibit = millis(algorithm, TO_NORMAL_INHIBIT);
+        }
+
+        private static long millis(AlarmAlgorithm algorithm, String seconds) {
+            return algorithm.getProperty(seconds).getNumber().longValue() * 1000l;
+        }
+
+    }
+
 }
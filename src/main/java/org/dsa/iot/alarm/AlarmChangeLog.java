@@ -0,0 +1,260 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * A bounded, in memory history of record mutations.  Each mutation is assigned the next
+ * sequence number and a copy of the record is retained so that streams can be resumed
+ * without resending the entire open set.  Once the capacity is reached, the oldest entries
+ * are discarded and the log can no longer replay from before them.
+ * <p>
+ * Sequence numbers are reserved before a mutation is persisted and completed after, and
+ * mutations can complete out of order.  A completion is held until every earlier number
+ * has completed, so entries are always in sequence order and the last sequence never
+ * includes a mutation that an earlier, unfinished one could still precede.
+ * <p>
+ * Deletes are entries too.  A closed record that was deleted is replayed in its closed
+ * state, which removes it from the open set of the client.  An open record that was
+ * deleted can't be expressed as a change, so the log won't replay across it and the
+ * client gets a full snapshot instead.  Deleting all records resets the log.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmChangeLog {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private boolean[] deletes; //parallel to entries
+    private AlarmRecord[] entries;
+    private long floor; //the log can replay anything after this
+    private int head; //index of the oldest entry
+    private long lastSequence; //every number up to this has completed
+    private long reserved;
+    private int size;
+    private TreeMap<Long, Completion> waiting = new TreeMap<>(); //on an earlier number
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param capacity     Maximum number of retained mutations.
+     * @param lastSequence Where to start numbering, the first mutation will be one greater.
+     */
+    AlarmChangeLog(int capacity, long lastSequence) {
+        this.entries = new AlarmRecord[Math.max(1, capacity)];
+        this.deletes = new boolean[entries.length];
+        this.floor = lastSequence;
+        this.lastSequence = lastSequence;
+        this.reserved = lastSequence;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Completes a reserved sequence number.  Every reserved number must be completed, with
+     * nulls if the mutation failed, or nothing after it will be published.
+     *
+     * @param sequence Reserved by next.
+     * @param record   Optional, a copy is retained.  If the event is a delete, the entry
+     *                 is a delete.
+     * @param event    Optional, a delete all event discards every earlier entry.
+     * @return The events published by this completion in sequence order, empty while an
+     * earlier number is still outstanding.
+     */
+    synchronized ArrayList<AlarmEvent> complete(long sequence,
+                                                AlarmRecord record,
+                                                AlarmEvent event) {
+        ArrayList<AlarmEvent> ret = new ArrayList<>();
+        if (sequence <= lastSequence) {
+            return ret;
+        }
+        AlarmRecord copy = null;
+        if (record != null) {
+            copy = record.newCopy();
+            copy.setSequence(sequence);
+        }
+        waiting.put(sequence, new Completion(copy, event));
+        Completion next;
+        while ((next = waiting.remove(lastSequence + 1)) != null) {
+            lastSequence++;
+            if (next.event != null) {
+                if (AlarmEvent.DELETE_ALL.equals(next.event.getType())) {
+                    clear();
+                    floor = lastSequence;
+                }
+                ret.add(next.event);
+            }
+            if (next.record != null) {
+                add(next.record, (next.event != null)
+                        && AlarmEvent.DELETE.equals(next.event.getType()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * True if every mutation after the given sequence number is still in the log.
+     */
+    synchronized boolean covers(long since) {
+        return (since >= floor) && (since <= lastSequence);
+    }
+
+    /**
+     * The sequence number of the most recent mutation that has been published, every
+     * number before it has completed.
+     */
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Reserves and returns the next sequence number, it must be passed to complete.
+     */
+    synchronized long next() {
+        return ++reserved;
+    }
+
+    /**
+     * Ensures future sequence numbers will be greater than the given, such as the last
+     * sequence number found in persistent storage.  Ignored while any reserved number is
+     * outstanding, so call before reserving any.
+     */
+    synchronized void seed(long sequence) {
+        if ((sequence <= reserved) || (reserved != lastSequence)) {
+            return;
+        }
+        if (size == 0) {
+            floor = sequence;
+        }
+        lastSequence = sequence;
+        reserved = sequence;
+    }
+
+    /**
+     * Changes the maximum number of retained mutations, the oldest entries are discarded if
+     * the log is shrinking.
+     */
+    synchronized void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity == entries.length) {
+            return;
+        }
+        AlarmRecord[] tmp = new AlarmRecord[capacity];
+        boolean[] tmpDeletes = new boolean[capacity];
+        int skip = Math.max(0, size - capacity);
+        if (skip > 0) {
+            floor = entries[(head + skip - 1) % entries.length].getSequence();
+        }
+        int len = size - skip;
+        int idx;
+        for (int i = 0; i < len; i++) {
+            idx = (head + skip + i) % entries.length;
+            tmp[i] = entries[idx];
+            tmpDeletes[i] = deletes[idx];
+        }
+        entries = tmp;
+        deletes = tmpDeletes;
+        head = 0;
+        size = len;
+    }
+
+    /**
+     * Returns the latest state of every record that changed after the given sequence, in
+     * the order of their most recent change.
+     *
+     * @param since      Exclusive sequence number to start after.
+     * @param alarmClass Optional, only return records of this class.
+     * @return Null if the log no longer covers the sequence, or an open record was
+     * deleted after it.
+     */
+    synchronized ArrayList<AlarmRecord> since(long since, AlarmClass alarmClass) {
+        if (!covers(since)) {
+            return null;
+        }
+        LinkedHashMap<UUID, AlarmRecord> latest = new LinkedHashMap<>();
+        AlarmRecord rec;
+        int idx;
+        for (int i = 0; i < size; i++) {
+            idx = (head + i) % entries.length;
+            rec = entries[idx];
+            if (rec.getSequence() <= since) {
+                continue;
+            }
+            if ((alarmClass != null) && (rec.getAlarmClass() != alarmClass)) {
+                continue;
+            }
+            if (deletes[idx] && rec.isOpen()) {
+                return null;
+            }
+            //Re-insert so iteration order follows the most recent change.
+            latest.remove(rec.getUuid());
+            latest.put(rec.getUuid(), rec);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * Discards every entry.
+     */
+    private void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+            deletes[i] = false;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Adds the entry, discarding the oldest if full.
+     */
+    private void add(AlarmRecord record, boolean delete) {
+        if (size == entries.length) {
+            floor = entries[head].getSequence();
+            entries[head] = null;
+            deletes[head] = false;
+            head = (head + 1) % entries.length;
+            size--;
+        }
+        int idx = (head + size) % entries.length;
+        entries[idx] = record;
+        deletes[idx] = delete;
+        size++;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A mutation waiting on an earlier sequence number.
+     */
+    private static class Completion {
+
+        AlarmEvent event;
+        AlarmRecord record;
+
+        Completion(AlarmRecord record, AlarmEvent event) {
+            this.event = event;
+            this.record = record;
+        }
+
+    }
+
+}
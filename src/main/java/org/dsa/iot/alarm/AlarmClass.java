@@ -11,8 +11,12 @@ package org.dsa.iot.alarm;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.dsa.iot.alarm.AlarmService.Counts;
 import org.dsa.iot.dslink.methods.StreamState;
 import org.dsa.iot.dslink.node.Node;
@@ -26,6 +30,7 @@ import org.dsa.iot.dslink.node.actions.ResultType;
 import org.dsa.iot.dslink.node.actions.table.Row;
 import org.dsa.iot.dslink.node.actions.table.Table;
 import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValuePair;
 import org.dsa.iot.dslink.node.value.ValueType;
 import org.dsa.iot.dslink.util.TimeUtils;
 import org.dsa.iot.dslink.util.handler.Handler;
@@ -54,22 +59,45 @@ public class AlarmClass extends AbstractAlarmObject {
     private static final String ESCALATION2_DYS = "Escalation 2 Days";
     private static final String ESCALATION2_HRS = "Escalation 2 Hours";
     private static final String ESCALATION2_MNS = "Escalation 2 Minutes";
+    private static final String EXECUTE_SKIPPED = "Execute Skipped";
+    private static final String EXECUTE_TIME = "Execute Time";
+    private static final String EXECUTE_TIME_MAX = "Execute Time Max";
+    private static final String FLOOD_BURST = "Flood Burst";
+    private static final String FLOOD_RATE = "Flood Rate";
+    private static final long FLOOD_UPDATE_INTERVAL = 10000;
+    private static final String IN_FLOOD = "In Flood";
     private static final String PURGE_CLOSED_DAYS = "Purge Closed Days";
     private static final String PURGE_OPEN_DAYS = "Purge Open Days";
+    private static final String SUPPRESSED_COUNT = "Suppressed Count";
 
     ///////////////////////////////////////////////////////////////////////////
     // Fields
     ///////////////////////////////////////////////////////////////////////////
     private ArrayList<AlarmStreamer> allUpdatesListenerCache = null;
     private HashSet<AlarmStreamer> allUpdatesListeners = new HashSet<>();
+    private HashMap<UUID, Integer> escalated = new HashMap<>(); //last level delivered
     private ArrayList<AlarmStreamer> escalation1ListenerCache = null;
     private HashSet<AlarmStreamer> escalation1Listeners = new HashSet<>();
     private ArrayList<AlarmStreamer> escalation2ListenerCache = null;
     private HashSet<AlarmStreamer> escalation2Listeners = new HashSet<>();
+    //Pending escalations are only valid if they are also the value in the index.
+    private HashMap<UUID, Escalation> escalationIndex = new HashMap<>();
+    private PriorityQueue<Escalation> escalations = new PriorityQueue<>();
+    private boolean escalationsInvalid = true;
+    private AtomicBoolean executing = new AtomicBoolean(false);
+    private int executeSkipped = 0;
+    private long executeTimeMax = 0;
+    private boolean flooding = false;
+    private UUID floodRecord;
+    private long floodRefillTime;
+    private long floodReported;
+    private long floodSuppressed;
+    private TimingWheel.Timeout floodTimeout;
+    private double floodTokens = -1;
     private long lastAutoPurge = -1;
-    private long lastEscalationCheck = System.currentTimeMillis();
     private ArrayList<AlarmStreamer> newAlarmListenerCache = null;
     private HashSet<AlarmStreamer> newAlarmListeners = new HashSet<>();
+    private long suppressedCount = 0;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
@@ -79,6 +107,21 @@ public class AlarmClass extends AbstractAlarmObject {
     // Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Ends any flood in progress.
+     */
+    @Override
+    protected void doStop() {
+        TimingWheel.Timeout timeout;
+        synchronized (this) {
+            timeout = floodTimeout;
+            floodTimeout = null;
+        }
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
     /**
      * Calls execute on all child algorithms, then checks for escalations.
      */
@@ -162,6 +205,8 @@ public class AlarmClass extends AbstractAlarmObject {
         action.setResultType(ResultType.STREAM);
         action.addParameter(
                 new Parameter(STREAM_UPDATES, ValueType.BOOL, new Value(true)));
+        action.addParameter(
+                new Parameter(SINCE_SEQUENCE, ValueType.NUMBER, new Value(0)));
         AlarmUtil.encodeAlarmColumns(action);
         node.createChild("Get Open Alarms", false).setSerializable(false).setAction(action)
             .build();
@@ -279,6 +324,122 @@ public class AlarmClass extends AbstractAlarmObject {
         initProperty(UNACKED_ALARM_COUNT, new Value(0)).createFakeBuilder()
                                                        .setSerializable(false)
                                                        .setWritable(Writable.NEVER);
+        initProperty(EXECUTE_TIME, new Value(0)).createFakeBuilder()
+                                                .setConfig("unit", new Value("ms"))
+                                                .setSerializable(false)
+                                                .setWritable(Writable.NEVER);
+        initProperty(EXECUTE_TIME_MAX, new Value(0)).createFakeBuilder()
+                                                    .setConfig("unit", new Value("ms"))
+                                                    .setSerializable(false)
+                                                    .setWritable(Writable.NEVER);
+        initProperty(EXECUTE_SKIPPED, new Value(0)).createFakeBuilder()
+                                                   .setSerializable(false)
+                                                   .setWritable(Writable.NEVER);
+        initProperty(FLOOD_RATE, new Value(0)).createFakeBuilder()
+                                               .setConfig("unit", new Value("/s"))
+                                               .setWritable(Writable.CONFIG);
+        initProperty(FLOOD_BURST, new Value(500)).setWritable(Writable.CONFIG);
+        initProperty(IN_FLOOD, new Value(false)).createFakeBuilder()
+                                                .setSerializable(false)
+                                                .setWritable(Writable.NEVER);
+        initProperty(SUPPRESSED_COUNT, new Value(0)).createFakeBuilder()
+                                                    .setSerializable(false)
+                                                    .setWritable(Writable.NEVER);
+    }
+
+    /**
+     * Changes to the escalation durations reschedule the pending escalations.
+     */
+    @Override
+    protected void onPropertyChange(Node child, ValuePair valuePair) {
+        if (child.getName().startsWith("Escalation")) {
+            synchronized (escalations) {
+                escalationsInvalid = true;
+            }
+        }
+    }
+
+    /**
+     * Called by the service before creating a record of this class.  Records are limited
+     * by a token bucket that refills at the flood rate up to the flood burst.  When it
+     * runs dry the class enters a flood: records are suppressed and counted on a single
+     * summary record instead.  The flood ends once the bucket has completely refilled.
+     * A flood rate of zero (the default) disables flood protection.
+     *
+     * @return False if the record should not be created.
+     */
+    boolean admitAlarm() {
+        double rate = getProperty(FLOOD_RATE).getNumber().doubleValue();
+        if (rate <= 0) {
+            return true;
+        }
+        synchronized (this) {
+            refillFloodTokens(rate);
+            if (!flooding && (floodTokens >= 1)) {
+                floodTokens--;
+                return true;
+            }
+            floodTokens = Math.max(0, floodTokens - 1);
+            suppressedCount++;
+            if (flooding) {
+                floodSuppressed++;
+                return false;
+            }
+            flooding = true;
+            floodReported = 0;
+            floodSuppressed = 1;
+        }
+        startFlood();
+        return false;
+    }
+
+    /**
+     * Called by the service before submitting execute.
+     *
+     * @return False if the previous execute hasn't completed, in which case this cycle
+     * should be skipped.
+     */
+    boolean beginExecute() {
+        if (executing.compareAndSet(false, true)) {
+            return true;
+        }
+        setProperty(EXECUTE_SKIPPED, new Value(++executeSkipped));
+        AlarmUtil.logInfo(getNode().getPath() + " still executing, skipping cycle");
+        return false;
+    }
+
+    /**
+     * Calls execute and records how long it took, must be preceded by a successful call
+     * to beginExecute.
+     */
+    void executeTimed() {
+        long start = System.currentTimeMillis();
+        try {
+            execute();
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        } finally {
+            long time = System.currentTimeMillis() - start;
+            setProperty(EXECUTE_TIME, new Value(time));
+            if (time > executeTimeMax) {
+                executeTimeMax = time;
+                setProperty(EXECUTE_TIME_MAX, new Value(time));
+            }
+            executing.set(false);
+        }
+    }
+
+    /**
+     * Events are retained as long as the records they describe could be: the longer of
+     * the purge days, or zero (forever) if either is zero.
+     */
+    int getEventRetentionDays() {
+        int closed = getProperty(PURGE_CLOSED_DAYS).getNumber().intValue();
+        int open = getProperty(PURGE_OPEN_DAYS).getNumber().intValue();
+        if ((closed <= 0) || (open <= 0)) {
+            return 0;
+        }
+        return Math.max(closed, open);
     }
 
     /**
@@ -295,9 +456,14 @@ public class AlarmClass extends AbstractAlarmObject {
     }
 
     /**
-     * Adds the record to all the streams in the corresponding collection.
+     * Records the change with the service, then adds the record to all the streams in the
+     * corresponding collection.
      */
     void notifyAllUpdates(AlarmRecord record) {
+        getService().recordChange(record);
+        if (!record.isAckRequired() || record.isAcknowledged()) {
+            cancelEscalation(record.getUuid());
+        }
         ArrayList<AlarmStreamer> list = allUpdatesListenerCache;
         synchronized (allUpdatesListeners) {
             if ((list == null) || (list.size() != allUpdatesListeners.size())) {
@@ -314,9 +480,11 @@ public class AlarmClass extends AbstractAlarmObject {
     }
 
     /**
-     * Adds the record to all the streams in the corresponding collection.
+     * Schedules the escalation of the record, then adds it to all the streams in the
+     * corresponding collection.
      */
     void notifyNewRecord(AlarmRecord record) {
+        scheduleEscalation(record);
         ArrayList<AlarmStreamer> list = newAlarmListenerCache;
         synchronized (newAlarmListeners) {
             if ((list == null) || (newAlarmListeners.size() != list.size())) {
@@ -332,16 +500,44 @@ public class AlarmClass extends AbstractAlarmObject {
     }
 
     /**
-     * The param can be null which indicates 0 counts for everything.
+     * Queues the first configured escalation of a new or reopened record, relative to its
+     * last occurrence.  Does nothing if the record already has a pending or delivered
+     * escalation, such as a record that was reopened without being acknowledged.
+     */
+    void scheduleEscalation(AlarmRecord record) {
+        synchronized (escalations) {
+            if (escalated.containsKey(record.getUuid())
+                    || escalationIndex.containsKey(record.getUuid())) {
+                return;
+            }
+        }
+        if (!record.isAckRequired() || record.isAcknowledged()) {
+            return;
+        }
+        long deadline = getEscalationTime(record.getLastOccurrence(), 1);
+        if (deadline > 0) {
+            addEscalation(new Escalation(record.getUuid(), deadline, 1));
+            return;
+        }
+        deadline = getEscalationTime(record.getLastOccurrence(), 2);
+        if (deadline > 0) {
+            addEscalation(new Escalation(record.getUuid(), deadline, 2));
+        }
+    }
+
+    /**
+     * The param can be null which indicates 0 counts for everything.  Only counts that
+     * changed are published.
      */
     void updateCounts(AlarmService.Counts counts) {
         if (counts == null) {
             counts = new Counts();
         }
-        setProperty(IN_ALARM_COUNT, new Value(counts.alarms));
-        setProperty(OPEN_ALARM_COUNT, new Value(counts.open));
-        setProperty(TTL_ALARM_COUNT, new Value(counts.ttl));
-        setProperty(UNACKED_ALARM_COUNT, new Value(counts.unacked));
+        AlarmService service = getService();
+        service.publishCount(this, IN_ALARM_COUNT, counts.alarms);
+        service.publishCount(this, OPEN_ALARM_COUNT, counts.open);
+        service.publishCount(this, TTL_ALARM_COUNT, counts.ttl);
+        service.publishCount(this, UNACKED_ALARM_COUNT, counts.unacked);
     }
 
     /**
@@ -398,6 +594,17 @@ public class AlarmClass extends AbstractAlarmObject {
         }
     }
 
+    /**
+     * Adds the escalation to the queue, replacing any pending escalation for the same
+     * record.
+     */
+    private void addEscalation(Escalation escalation) {
+        synchronized (escalations) {
+            escalationIndex.put(escalation.uuid, escalation);
+            escalations.add(escalation);
+        }
+    }
+
     /**
      * Adds the duration to the calendar and returns it.
      *
@@ -416,6 +623,16 @@ public class AlarmClass extends AbstractAlarmObject {
         return from;
     }
 
+    /**
+     * Removes any pending escalation for the record.
+     */
+    private void cancelEscalation(UUID uuid) {
+        synchronized (escalations) {
+            escalated.remove(uuid);
+            escalationIndex.remove(uuid);
+        }
+    }
+
     /**
      * Auto purge once an hour.
      */
@@ -439,7 +656,7 @@ public class AlarmClass extends AbstractAlarmObject {
             while (cur.next()) {
                 if (cur.isClosed()) {
                     AlarmUtil.logTrace("Auto purging: " + cur.getUuid().toString());
-                    Alarming.getProvider().deleteRecord(cur.getUuid());
+                    getService().deleteRecord(cur.getUuid());
                     update = true;
                 }
                 Thread.yield();
@@ -454,64 +671,75 @@ public class AlarmClass extends AbstractAlarmObject {
             while (cur.next()) {
                 if (cur.isOpen()) {
                     AlarmUtil.logTrace("Auto purging: " + cur.getUuid().toString());
-                    Alarming.getProvider().deleteRecord(cur.getUuid());
+                    getService().deleteRecord(cur.getUuid());
                     update = true;
                 }
                 Thread.yield();
             }
             TimeUtils.recycleCalendar(cal);
         }
+        days = getEventRetentionDays();
+        if (days > 0) {
+            Calendar cal = TimeUtils.reuseCalendar(now);
+            TimeUtils.addDays(-days, cal);
+            Alarming.getProvider().deleteEvents(this, cal);
+            TimeUtils.recycleCalendar(cal);
+        }
         if (update) {
             getService().updateCounts();
         }
     }
 
     /**
-     * Iterates the open alarms looking for escalations.
+     * Fires the pending escalations whose deadline has passed.  Each record escalates at
+     * most once per level, the database is only visited for the records that are due.
      */
     private void checkEscalations() {
         long now = System.currentTimeMillis();
         try {
-            //Bail if no listeners.
-            if ((escalation1Listeners.isEmpty()) && (escalation2Listeners.isEmpty())) {
-                return;
+            boolean rebuild = false;
+            synchronized (escalations) {
+                if (escalationsInvalid) {
+                    escalationsInvalid = false;
+                    rebuild = true;
+                }
             }
-            int e1dys = getProperty(ESCALATION1_DYS).getNumber().intValue();
-            int e1hrs = getProperty(ESCALATION1_HRS).getNumber().intValue();
-            int e1mns = getProperty(ESCALATION1_MNS).getNumber().intValue();
-            boolean checkEs1 = (e1dys > 0) || (e1hrs > 0) || (e1mns > 0);
-            int e2dys = getProperty(ESCALATION2_DYS).getNumber().intValue();
-            int e2hrs = getProperty(ESCALATION2_HRS).getNumber().intValue();
-            int e2mns = getProperty(ESCALATION2_MNS).getNumber().intValue();
-            boolean checkEs2 = (e2dys > 0) || (e2hrs > 0) || (e2mns > 0);
-            //Bail if no escalation configured.
-            if (!checkEs1 && !checkEs2) {
-                return;
+            if (rebuild) {
+                rebuildEscalations();
             }
-            Calendar calendar = Calendar.getInstance();
-            AlarmCursor cursor = Alarming.getProvider().queryOpenAlarms(this);
-            while (cursor.next()) {
-                if (cursor.isAckRequired() && !cursor.isAcknowledged()) {
-                    calendar.setTimeInMillis(cursor.getCreatedTime());
-                    if (checkEs1) {
-                        applyEscalation(calendar, e1dys, e1hrs, e1mns);
-                        if (shouldEscalate(calendar.getTimeInMillis(), now)) {
-                            notifyEscalation1(cursor.newCopy());
-                        }
+            Escalation next;
+            while (true) {
+                synchronized (escalations) {
+                    next = escalations.peek();
+                    if ((next == null) || (next.deadline > now)) {
+                        return;
                     }
-                    if (checkEs2) {
-                        //escalation 2 is relative to escalation 1.
-                        applyEscalation(calendar, e2dys, e2hrs, e2mns);
-                        if (shouldEscalate(calendar.getTimeInMillis(), now)) {
-                            notifyEscalation2(cursor.newCopy());
-                        }
+                    escalations.poll();
+                    if (escalationIndex.get(next.uuid) != next) {
+                        continue; //cancelled or superseded
+                    }
+                    escalationIndex.remove(next.uuid);
+                }
+                AlarmRecord rec = Alarming.getProvider().getAlarm(next.uuid);
+                if ((rec == null) || !rec.isAckRequired() || rec.isAcknowledged()) {
+                    continue;
+                }
+                synchronized (escalations) {
+                    escalated.put(next.uuid, next.level);
+                }
+                if (next.level == 1) {
+                    notifyEscalation1(rec);
+                    //escalation 2 is relative to escalation 1.
+                    long deadline = getEscalationTime(next.deadline, 2);
+                    if (deadline > 0) {
+                        addEscalation(new Escalation(next.uuid, deadline, 2));
                     }
+                } else {
+                    notifyEscalation2(rec);
                 }
             }
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
-        } finally {
-            lastEscalationCheck = now;
         }
     }
 
@@ -531,6 +759,11 @@ public class AlarmClass extends AbstractAlarmObject {
         event.setStreamState(StreamState.INITIALIZED);
         Table table = event.getTable();
         table.setMode(Table.Mode.APPEND);
+        if (alarmRecord == null) {
+            //Suppressed by flood protection.
+            event.setStreamState(StreamState.CLOSED);
+            return;
+        }
         AlarmUtil.encodeAlarm(alarmRecord, table, null, null);
         event.setStreamState(StreamState.CLOSED);
         notifyAllUpdates(alarmRecord);
@@ -658,7 +891,42 @@ public class AlarmClass extends AbstractAlarmObject {
     }
 
     /**
-     * Action handler for getting all open alarms followed by a stream of updates.
+     * Adds the configured escalation duration for the given level to the given time.
+     *
+     * @return Zero if the level is not configured.
+     */
+    private long getEscalationTime(long from, int level) {
+        int dys, hrs, mns;
+        if (level == 1) {
+            dys = getProperty(ESCALATION1_DYS).getNumber().intValue();
+            hrs = getProperty(ESCALATION1_HRS).getNumber().intValue();
+            mns = getProperty(ESCALATION1_MNS).getNumber().intValue();
+        } else {
+            dys = getProperty(ESCALATION2_DYS).getNumber().intValue();
+            hrs = getProperty(ESCALATION2_HRS).getNumber().intValue();
+            mns = getProperty(ESCALATION2_MNS).getNumber().intValue();
+        }
+        if ((dys <= 0) && (hrs <= 0) && (mns <= 0)) {
+            return 0;
+        }
+        Calendar cal = TimeUtils.reuseCalendar(from);
+        long ret = applyEscalation(cal, dys, hrs, mns).getTimeInMillis();
+        TimeUtils.recycleCalendar(cal);
+        return ret;
+    }
+
+    private int getFloodBurst() {
+        Value value = getProperty(FLOOD_BURST);
+        if ((value == null) || (value.getNumber() == null)) {
+            return 1;
+        }
+        return Math.max(1, value.getNumber().intValue());
+    }
+
+    /**
+     * Action handler for getting all open alarms followed by a stream of updates.  If a since
+     * sequence is provided and the change log still covers it, only the records that changed
+     * after it are sent rather than the entire open set.
      */
     private void getOpenAlarms(final ActionResult event) {
         boolean updates = true;
@@ -666,13 +934,23 @@ public class AlarmClass extends AbstractAlarmObject {
         if ((stream != null) && (stream.getBool() != null)) {
             updates = stream.getBool();
         }
-        final AlarmCursor cursor = Alarming.getProvider().queryOpenAlarms(this);
+        long since = 0;
+        Value value = event.getParameter(SINCE_SEQUENCE);
+        if ((value != null) && (value.getNumber() != null)) {
+            since = value.getNumber().longValue();
+        }
+        long snapshotSequence = getService().getLastSequence();
+        AlarmCursor cursor = getService().replayChanges(since, this);
+        if (cursor == null) {
+            cursor = Alarming.getProvider().queryOpenAlarms(this);
+        }
         AlarmStreamer streamer = null;
         if (updates) {
             streamer = new AlarmStreamer(allUpdatesListeners, event, cursor);
         } else {
             streamer = new AlarmStreamer(null, event, cursor);
         }
+        streamer.setSnapshotSequence(snapshotSequence);
         allUpdatesListenerCache = null;
         AlarmUtil.run(streamer, "Open Alarms");
     }
@@ -714,14 +992,86 @@ public class AlarmClass extends AbstractAlarmObject {
     }
 
     /**
-     * Whether or not escalation is needed.
-     *
-     * @param escalationTime The time escalation should occur.
-     * @param now            The time to evaluate.
-     * @return Whether or not an escalation is needed.
+     * Repopulates the escalation queue from the open alarms.  Called on the first check and
+     * after the escalation durations change.  Each record is queued for the first level it
+     * hasn't been delivered, even if the deadline already passed (while stopped, or because
+     * the duration was shortened), so overdue escalations fire once on the next check.
+     */
+    private void rebuildEscalations() {
+        HashMap<UUID, Integer> delivered;
+        synchronized (escalations) {
+            escalations.clear();
+            escalationIndex.clear();
+            delivered = escalated;
+            escalated = new HashMap<>();
+        }
+        AlarmCursor cursor = Alarming.getProvider().queryOpenAlarms(this);
+        while (cursor.next()) {
+            if (!cursor.isAckRequired() || cursor.isAcknowledged()) {
+                continue;
+            }
+            UUID uuid = cursor.getUuid();
+            Integer level = delivered.get(uuid);
+            if (level == null) {
+                level = 0;
+            } else {
+                synchronized (escalations) {
+                    escalated.put(uuid, level);
+                }
+            }
+            long e1 = getEscalationTime(cursor.getLastOccurrence(), 1);
+            if ((e1 > 0) && (level < 1)) {
+                addEscalation(new Escalation(uuid, e1, 1));
+                continue;
+            }
+            long e2 = getEscalationTime(e1 > 0 ? e1 : cursor.getLastOccurrence(), 2);
+            if ((e2 > 0) && (level < 2)) {
+                addEscalation(new Escalation(uuid, e2, 2));
+            }
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill, must be synchronized on this.
+     */
+    private void refillFloodTokens(double rate) {
+        long now = System.currentTimeMillis();
+        int burst = getFloodBurst();
+        if (floodTokens < 0) {
+            floodTokens = burst;
+        } else {
+            floodTokens = Math.min(burst, floodTokens + ((now - floodRefillTime) * rate / 1000d));
+        }
+        floodRefillTime = now;
+    }
+
+    /**
+     * Creates the flood summary record and schedules its updates.
      */
-    private boolean shouldEscalate(long escalationTime, long now) {
-        return ((lastEscalationCheck < escalationTime) && (escalationTime <= now));
+    private void startFlood() {
+        AlarmUtil.logWarning(getNode().getPath() + " alarm flood, suppressing new records");
+        setProperty(IN_FLOOD, new Value(true));
+        AlarmRecord rec = null;
+        try {
+            rec = getService().createAlarm(
+                    this, null, getNode().getPath(), AlarmState.ALERT,
+                    "Alarm flood, new records of this class are being suppressed", false);
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        }
+        synchronized (this) {
+            floodRecord = (rec == null) ? null : rec.getUuid();
+            floodTimeout = getService().getTimingWheel().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    updateFlood();
+                }
+            }, FLOOD_UPDATE_INTERVAL);
+        }
+        if (rec != null) {
+            notifyNewRecord(rec);
+            notifyAllUpdates(rec);
+        }
     }
 
     /**
@@ -762,10 +1112,102 @@ public class AlarmClass extends AbstractAlarmObject {
         newAlarmListenerCache = null;
     }
 
+    /**
+     * Adds the number of records suppressed since the last update as a note on the flood
+     * summary record, then either ends the flood or schedules the next update.  When the
+     * flood ends, watches that went into alarm without a record are annunciated.
+     */
+    private void updateFlood() {
+        double rate = getProperty(FLOOD_RATE).getNumber().doubleValue();
+        boolean end;
+        long suppressed, total;
+        UUID uuid;
+        synchronized (this) {
+            if (!flooding) {
+                return;
+            }
+            refillFloodTokens(rate);
+            end = (rate <= 0) || (floodTokens >= getFloodBurst());
+            suppressed = floodSuppressed - floodReported;
+            floodReported = floodSuppressed;
+            total = floodSuppressed;
+            uuid = floodRecord;
+            if (end) {
+                flooding = false;
+                floodRecord = null;
+                floodTimeout = null;
+            } else {
+                floodTimeout = getService().getTimingWheel().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateFlood();
+                    }
+                }, FLOOD_UPDATE_INTERVAL);
+            }
+        }
+        setProperty(SUPPRESSED_COUNT, new Value(suppressedCount));
+        if (uuid != null) {
+            try {
+                if (suppressed > 0) {
+                    Alarming.getProvider().addNote(
+                            uuid, getNode().getName(),
+                            suppressed + " records suppressed, " + total + " total");
+                }
+                if (end) {
+                    getService().returnToNormal(uuid);
+                } else if (suppressed > 0) {
+                    notifyAllUpdates(Alarming.getProvider().getAlarm(uuid));
+                }
+            } catch (Exception x) {
+                AlarmUtil.logError(getNode().getPath(), x);
+            }
+        }
+        if (end) {
+            setProperty(IN_FLOOD, new Value(false));
+            AlarmUtil.logInfo(getNode().getPath() + " flood ended, " + total +
+                                      " records suppressed");
+            ArrayList<AlarmWatch> watches = new ArrayList<>();
+            getWatches(watches);
+            for (final AlarmWatch watch : watches) {
+                final AlarmAlgorithm algorithm = watch.getAlgorithm();
+                if ((algorithm != null) && (watch.getAlarmState() != AlarmState.NORMAL)) {
+                    getService().executeOnLane(watch, new Runnable() {
+                        @Override
+                        public void run() {
+                            algorithm.annunciate(watch);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Inner Classes
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * A pending escalation, ordered by deadline.
+     */
+    private static class Escalation implements Comparable<Escalation> {
+
+        long deadline;
+        int level;
+        UUID uuid;
+
+        Escalation(UUID uuid, long deadline, int level) {
+            this.uuid = uuid;
+            this.deadline = deadline;
+            this.level = level;
+        }
+
+        @Override
+        public int compareTo(Escalation other) {
+            return Long.compare(deadline, other.deadline);
+        }
+
+    }
+
 }
 
 
@@ -37,19 +37,23 @@ public interface AlarmConstants {
     String CREATE_ALARM = "Create Alarm";
     String CREATE_STATE = "Create State";
     String CREATED_TIME = "Created Time";
+    String DETAIL = "Detail";
     String ENABLED = "Enabled";
+    String EVENT = "Event";
     String FAULT = "Fault";
     String HAS_NOTES = "Has Notes";
     String HANDLE = "Handle";
     String IN_ALARM_COUNT = "In Alarm Count";
     String IS_ACKNOWLEDGED = "Is Acknowledged";
     String IS_NORMAL = "Is Normal";
+    String LAST_OCCURRENCE = "Last Occurrence";
     String JAVA_TYPE = "javaType";
     String MESSAGE = "Message";
     String NAME = "Name";
     String NORMAL = "Normal";
     String NORMAL_TIME = "Normal Time";
     String NOTE = "Note";
+    String OCCURRENCES = "Occurrences";
     String OFFNORMAL = "Offnormal";
     String OPEN = "Open";
     String OPEN_STATE = "Open State";
@@ -59,6 +63,9 @@ public interface AlarmConstants {
     String PAGE_SIZE = "Page Size";
     String PATH = "Path";
     String RESULT = "Result";
+    String SEQUENCE = "Sequence";
+    String SINCE_SEQUENCE = "Since Sequence";
+    String SINCE_TIME = "Since Time";
     String SORT_BY = "Sort By";
     String SORT_ASCENDING = "Sort Ascending";
     String SOURCE_PATH = "Source Path";
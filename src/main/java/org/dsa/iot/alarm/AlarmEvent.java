@@ -0,0 +1,214 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.UUID;
+
+/**
+ * An entry in the append-only change log of alarm records.  Providers write one for
+ * every create, acknowledge, return to normal, note and delete.
+ *
+ * @author Aaron Hansen
+ */
+public class AlarmEvent {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    public static final String ACKNOWLEDGE = "Acknowledge";
+    public static final String CREATE = "Create";
+    public static final String DELETE = "Delete";
+    public static final String DELETE_ALL = "Delete All";
+    public static final String NORMAL = "Normal";
+    public static final String NOTE = "Note";
+    public static final String REOPEN = "Reopen";
+    public static final String SHELVE = "Shelve";
+    public static final String UNSHELVE = "Unshelve";
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private String alarmClass;
+    private String detail;
+    private long sequence;
+    private String sourcePath;
+    private long timestamp;
+    private String type;
+    private String user;
+    private UUID uuid;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Construction
+    ///////////////////////////////////////////////////////////////////////////
+
+    public AlarmEvent() {
+    }
+
+    public AlarmEvent(String type) {
+        this.type = type;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies the internal state of the given event.
+     */
+    public void copy(AlarmEvent event) {
+        alarmClass = event.alarmClass;
+        detail = event.detail;
+        sequence = event.sequence;
+        sourcePath = event.sourcePath;
+        timestamp = event.timestamp;
+        type = event.type;
+        user = event.user;
+        uuid = event.uuid;
+    }
+
+    /**
+     * Name of the alarm class of the record, may be null.
+     */
+    public String getAlarmClass() {
+        return alarmClass;
+    }
+
+    /**
+     * Type specific information, such as the message of a new record or the text of a
+     * note.  May be null.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * The change sequence number, unique and increasing.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * The source path of the record, may be null.
+     */
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    /**
+     * When the event occurred.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * One of the constants defined in this class.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The user or entity responsible for the event, may be null.
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * The UUID of the affected alarm record, may be null.
+     */
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Returns a new event describing a change to the given record, the sequence and
+     * timestamp are taken from the record.
+     */
+    public static AlarmEvent make(String type, AlarmRecord record) {
+        AlarmEvent ret = new AlarmEvent(type)
+                .setUuid(record.getUuid())
+                .setSequence(record.getSequence())
+                .setSourcePath(record.getSourcePath())
+                .setTimestamp(System.currentTimeMillis());
+        if (record.getAlarmClass() != null) {
+            ret.setAlarmClass(record.getAlarmClass().getNode().getName());
+        }
+        return ret;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setAlarmClass(String arg) {
+        alarmClass = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setDetail(String arg) {
+        detail = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setSequence(long arg) {
+        sequence = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setSourcePath(String arg) {
+        sourcePath = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setTimestamp(long arg) {
+        timestamp = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setType(String arg) {
+        type = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setUser(String arg) {
+        user = arg;
+        return this;
+    }
+
+    /**
+     * Returns this.
+     */
+    public AlarmEvent setUuid(UUID arg) {
+        uuid = arg;
+        return this;
+    }
+
+} //class
@@ -0,0 +1,477 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+/**
+ * A boolean expression over numeric variables, parsed once into a tree of terms that is
+ * evaluated with primitive doubles only, so evaluation never boxes or allocates.
+ * Booleans are 1 and 0, any non-zero value is true.  Sub-expressions of constants are
+ * folded when parsed.
+ * <p>
+ * Variables:
+ * <ul>
+ * <li>value - The current value of the watch.</li>
+ * <li>elapsed - Seconds the watch has been in its current alarm state.</li>
+ * <li>cov - Seconds since the last change of value.</li>
+ * <li>in1, in2, ... - The additional inputs of a composite watch, NaN if unknown.</li>
+ * <li>true, false</li>
+ * </ul>
+ * Operators, lowest precedence first: ||, &amp;&amp;, comparisons (&lt; &lt;= &gt; &gt;=
+ * == !=), + -, * / %, unary ! -.  Functions: abs(x), min(x,y), max(x,y).
+ * <p>
+ * For example: value &gt; 80 &amp;&amp; value &lt; 200
+ *
+ * @author Aaron Hansen
+ */
+class AlarmExpression {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int ABS = 0;
+    private static final int ADD = 1;
+    private static final int AND = 2;
+    private static final int DIV = 3;
+    private static final int EQ = 4;
+    private static final int GT = 5;
+    private static final int GTE = 6;
+    private static final int LT = 7;
+    private static final int LTE = 8;
+    private static final int MAX = 9;
+    private static final int MIN = 10;
+    private static final int MOD = 11;
+    private static final int MUL = 12;
+    private static final int NE = 13;
+    private static final int NEG = 14;
+    private static final int NOT = 15;
+    private static final int OR = 16;
+    private static final int SUB = 17;
+
+    private static final double[] NO_INPUTS = new double[0];
+    private static final int VAR_COV = 0;
+    private static final int VAR_ELAPSED = 1;
+    private static final int VAR_VALUE = 2;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Term root;
+    private String text;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    private AlarmExpression(String text, Term root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param value   The current value.
+     * @param elapsed Seconds in the current state.
+     * @param cov     Seconds since the last cov.
+     */
+    boolean isTrue(double value, double elapsed, double cov) {
+        return root.eval(value, elapsed, cov, NO_INPUTS) != 0;
+    }
+
+    /**
+     * Evaluates the expression with additional inputs.
+     *
+     * @param inputs in1 is at index 0.
+     */
+    boolean isTrue(double value, double elapsed, double cov, double[] inputs) {
+        return root.eval(value, elapsed, cov, inputs) != 0;
+    }
+
+    /**
+     * Parses the expression.
+     *
+     * @throws IllegalArgumentException If the expression is malformed.
+     */
+    static AlarmExpression parse(String text) {
+        Parser parser = new Parser(text);
+        Term root = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.pos < text.length()) {
+            throw parser.error("Unexpected '" + text.charAt(parser.pos) + "'");
+        }
+        return new AlarmExpression(text, root);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static double bool(boolean arg) {
+        return arg ? 1 : 0;
+    }
+
+    /**
+     * Creates an operation, folding it into a constant if all operands are constant.
+     */
+    private static Term operation(int op, Term left, Term right) {
+        Term ret = new Operation(op, left, right);
+        if ((left instanceof Constant)
+                && ((right == null) || (right instanceof Constant))) {
+            return new Constant(ret.eval(0, 0, 0, NO_INPUTS));
+        }
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A literal.
+     */
+    private static class Constant extends Term {
+
+        private double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double eval(double value, double elapsed, double cov, double[] inputs) {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * An additional input, by index.
+     */
+    private static class Input extends Term {
+
+        private int index;
+
+        Input(int index) {
+            this.index = index;
+        }
+
+        @Override
+        double eval(double value, double elapsed, double cov, double[] inputs) {
+            if (index < inputs.length) {
+                return inputs[index];
+            }
+            return Double.NaN;
+        }
+
+    }
+
+    /**
+     * An operator or function, unary operations have no right operand.
+     */
+    private static class Operation extends Term {
+
+        private Term left;
+        private int op;
+        private Term right;
+
+        Operation(int op, Term left, Term right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double eval(double value, double elapsed, double cov, double[] inputs) {
+            double l = left.eval(value, elapsed, cov, inputs);
+            switch (op) {
+                case ABS:
+                    return Math.abs(l);
+                case NEG:
+                    return -l;
+                case NOT:
+                    return bool(l == 0);
+                case AND:
+                    return bool((l != 0) && (right.eval(value, elapsed, cov, inputs) != 0));
+                case OR:
+                    return bool((l != 0) || (right.eval(value, elapsed, cov, inputs) != 0));
+            }
+            double r = right.eval(value, elapsed, cov, inputs);
+            switch (op) {
+                case ADD:
+                    return l + r;
+                case DIV:
+                    return l / r;
+                case EQ:
+                    return bool(l == r);
+                case GT:
+                    return bool(l > r);
+                case GTE:
+                    return bool(l >= r);
+                case LT:
+                    return bool(l < r);
+                case LTE:
+                    return bool(l <= r);
+                case MAX:
+                    return Math.max(l, r);
+                case MIN:
+                    return Math.min(l, r);
+                case MOD:
+                    return l % r;
+                case MUL:
+                    return l * r;
+                case NE:
+                    return bool(l != r);
+                case SUB:
+                    return l - r;
+            }
+            return 0;
+        }
+
+    }
+
+    /**
+     * Recursive descent, one method per precedence level.
+     */
+    private static class Parser {
+
+        int pos;
+        String text;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg + " at " + pos + ": " + text);
+        }
+
+        /**
+         * Consumes the token if it is next.
+         */
+        boolean match(String token) {
+            skipWhitespace();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        Term parseAdd() {
+            Term ret = parseMul();
+            while (true) {
+                if (match("+")) {
+                    ret = operation(ADD, ret, parseMul());
+                } else if (match("-")) {
+                    ret = operation(SUB, ret, parseMul());
+                } else {
+                    return ret;
+                }
+            }
+        }
+
+        Term parseAnd() {
+            Term ret = parseCompare();
+            while (match("&&")) {
+                ret = operation(AND, ret, parseCompare());
+            }
+            return ret;
+        }
+
+        Term parseCompare() {
+            Term ret = parseAdd();
+            if (match("<=")) {
+                return operation(LTE, ret, parseAdd());
+            } else if (match(">=")) {
+                return operation(GTE, ret, parseAdd());
+            } else if (match("==")) {
+                return operation(EQ, ret, parseAdd());
+            } else if (match("!=")) {
+                return operation(NE, ret, parseAdd());
+            } else if (match("<")) {
+                return operation(LT, ret, parseAdd());
+            } else if (match(">")) {
+                return operation(GT, ret, parseAdd());
+            }
+            return ret;
+        }
+
+        Term parseMul() {
+            Term ret = parseUnary();
+            while (true) {
+                if (match("*")) {
+                    ret = operation(MUL, ret, parseUnary());
+                } else if (match("/")) {
+                    ret = operation(DIV, ret, parseUnary());
+                } else if (match("%")) {
+                    ret = operation(MOD, ret, parseUnary());
+                } else {
+                    return ret;
+                }
+            }
+        }
+
+        Term parseOr() {
+            Term ret = parseAnd();
+            while (match("||")) {
+                ret = operation(OR, ret, parseAnd());
+            }
+            return ret;
+        }
+
+        Term parsePrimary() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end");
+            }
+            if (match("(")) {
+                Term ret = parseOr();
+                if (!match(")")) {
+                    throw error("Expected ')'");
+                }
+                return ret;
+            }
+            char ch = text.charAt(pos);
+            if (Character.isDigit(ch) || (ch == '.')) {
+                int start = pos;
+                while ((pos < text.length()) && isNumberChar(text.charAt(pos))) {
+                    pos++;
+                }
+                try {
+                    return new Constant(Double.parseDouble(text.substring(start, pos)));
+                } catch (NumberFormatException x) {
+                    pos = start;
+                    throw error("Invalid number");
+                }
+            }
+            if (!Character.isLetter(ch)) {
+                throw error("Unexpected '" + ch + "'");
+            }
+            int start = pos;
+            while ((pos < text.length()) && Character.isLetterOrDigit(text.charAt(pos))) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            switch (name) {
+                case "value":
+                    return new Variable(VAR_VALUE);
+                case "elapsed":
+                    return new Variable(VAR_ELAPSED);
+                case "cov":
+                    return new Variable(VAR_COV);
+                case "true":
+                    return new Constant(1);
+                case "false":
+                    return new Constant(0);
+                case "abs":
+                    return operation(ABS, parseArgs(1)[0], null);
+                case "max":
+                    Term[] args = parseArgs(2);
+                    return operation(MAX, args[0], args[1]);
+                case "min":
+                    args = parseArgs(2);
+                    return operation(MIN, args[0], args[1]);
+            }
+            if (name.startsWith("in") && (name.length() > 2)) {
+                try {
+                    int index = Integer.parseInt(name.substring(2));
+                    if (index > 0) {
+                        return new Input(index - 1);
+                    }
+                } catch (NumberFormatException ignore) {
+                }
+            }
+            pos = start;
+            throw error("Unknown name '" + name + "'");
+        }
+
+        Term parseUnary() {
+            if (match("!")) {
+                return operation(NOT, parseUnary(), null);
+            } else if (match("-")) {
+                return operation(NEG, parseUnary(), null);
+            }
+            return parsePrimary();
+        }
+
+        void skipWhitespace() {
+            while ((pos < text.length()) && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean isNumberChar(char ch) {
+            if (Character.isDigit(ch) || (ch == '.') || (ch == 'e') || (ch == 'E')) {
+                return true;
+            }
+            //Exponent sign
+            return ((ch == '-') || (ch == '+'))
+                    && ((text.charAt(pos - 1) == 'e') || (text.charAt(pos - 1) == 'E'));
+        }
+
+        private Term[] parseArgs(int count) {
+            if (!match("(")) {
+                throw error("Expected '('");
+            }
+            Term[] ret = new Term[count];
+            for (int i = 0; i < count; i++) {
+                if ((i > 0) && !match(",")) {
+                    throw error("Expected ','");
+                }
+                ret[i] = parseOr();
+            }
+            if (!match(")")) {
+                throw error("Expected ')'");
+            }
+            return ret;
+        }
+
+    }
+
+    /**
+     * A node of the expression tree.
+     */
+    private abstract static class Term {
+
+        abstract double eval(double value, double elapsed, double cov, double[] inputs);
+
+    }
+
+    /**
+     * One of the VAR_ constants.
+     */
+    private static class Variable extends Term {
+
+        private int var;
+
+        Variable(int var) {
+            this.var = var;
+        }
+
+        @Override
+        double eval(double value, double elapsed, double cov, double[] inputs) {
+            switch (var) {
+                case VAR_COV:
+                    return cov;
+                case VAR_ELAPSED:
+                    return elapsed;
+            }
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+/**
+ * A fixed size histogram of durations in millis.  Bucket i holds values less than 2^i
+ * (and at least 2^(i-1)), the last bucket holds everything larger.  Percentiles are
+ * reported as the upper bound of the bucket they fall in.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmHistogram {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int BUCKETS = 24; //the last bucket starts at ~2.3 hours
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private long[] counts = new long[BUCKETS];
+    private long max;
+    private long total;
+    private long sum;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Number of buckets.
+     */
+    int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * The number of values recorded in the given bucket.
+     */
+    synchronized long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * The exclusive upper bound of the given bucket, or -1 for the last bucket.
+     */
+    long getUpperBound(int bucket) {
+        if (bucket == (BUCKETS - 1)) {
+            return -1;
+        }
+        return 1l << bucket;
+    }
+
+    /**
+     * The largest value recorded.
+     */
+    synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * The average of all values recorded.
+     */
+    synchronized long getMean() {
+        if (total == 0) {
+            return 0;
+        }
+        return sum / total;
+    }
+
+    /**
+     * The upper bound of the bucket containing the given percentile (0-100), or the max
+     * if it falls in the last bucket.
+     */
+    synchronized long getPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, getUpperBound(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The number of values recorded.
+     */
+    synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Adds a value to the histogram.
+     */
+    synchronized void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        counts[Math.min(bucket, BUCKETS - 1)]++;
+        total++;
+        sum += millis;
+        if (millis > max) {
+            max = millis;
+        }
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    synchronized void reset() {
+        counts = new long[BUCKETS];
+        max = 0;
+        total = 0;
+        sum = 0;
+    }
+
+    /**
+     * A brief summary such as: n=360 mean=12ms p50=16ms p90=32ms p99=64ms max=80ms
+     */
+    synchronized String summary() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("n=").append(total);
+        buf.append(" mean=").append(getMean()).append("ms");
+        buf.append(" p50=").append(getPercentile(50)).append("ms");
+        buf.append(" p90=").append(getPercentile(90)).append("ms");
+        buf.append(" p99=").append(getPercentile(99)).append("ms");
+        buf.append(" max=").append(max).append("ms");
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,97 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A fixed number of single threaded lanes, separate from the SDK thread pool.  Tasks
+ * with the same key always run on the same lane, so they run in order and never
+ * overlap, while different keys run in parallel.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmLanes {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private ExecutorService[] lanes;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param count Number of lanes (threads), at least one will be created.
+     * @param name  Thread name prefix.
+     */
+    AlarmLanes(int count, final String name) {
+        lanes = new ExecutorService[Math.max(1, count)];
+        for (int i = 0; i < lanes.length; i++) {
+            final String threadName = name + " " + i;
+            lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Queues the task on the lane of the key.
+     *
+     * @return False if the lanes have been shutdown.
+     */
+    boolean execute(int key, final Runnable task) {
+        try {
+            lanes[(key & Integer.MAX_VALUE) % lanes.length].execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Throwable x) {
+                        AlarmUtil.logError("Evaluation lane", x);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException x) {
+            return false;
+        }
+    }
+
+    /**
+     * The number of lanes.
+     */
+    int getSize() {
+        return lanes.length;
+    }
+
+    /**
+     * Lets queued tasks complete but accepts no new ones.
+     */
+    void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+}
@@ -55,7 +55,8 @@ public class AlarmLinkHandler extends DSLinkHandler implements AlarmConstants {
     }
 
     /**
-     * Captures the reference to the requester link.
+     * Captures the reference to the requester link.  Subscriptions queued while
+     * disconnected will be issued by the service.
      */
     @Override
     public void onRequesterConnected(DSLink link) {
@@ -64,12 +65,16 @@ public class AlarmLinkHandler extends DSLinkHandler implements AlarmConstants {
     }
 
     /**
-     * Cleans up everything related to the requester.
+     * Cleans up everything related to the requester and queues every watch subscription
+     * to be re-issued when it reconnects.
      */
     @Override
     public void onRequesterDisconnected(DSLink link) {
         AlarmUtil.logInfo("Requester disconnected");
         requesterLink = null;
+        if (alarmService != null) {
+            alarmService.getSubscriptions().requesterDisconnected();
+        }
     }
 
     /**
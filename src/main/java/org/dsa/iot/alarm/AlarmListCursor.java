@@ -0,0 +1,64 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.List;
+
+/**
+ * A cursor over records that are already in memory.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmListCursor extends AlarmCursor {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private int index = 0;
+    private int limit;
+    private List<AlarmRecord> records;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    AlarmListCursor(List<AlarmRecord> records) {
+        this.records = records;
+        this.limit = records.size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void close() {
+        records = null;
+    }
+
+    @Override
+    public boolean next() {
+        if ((records == null) || (index >= limit)) {
+            close();
+            return false;
+        }
+        copy(records.get(index++));
+        return true;
+    }
+
+    @Override
+    public void setPaging(int page, int pageSize) {
+        if (pageSize > 0) {
+            index = Math.min(page * pageSize, records.size());
+            limit = Math.min(index + pageSize, records.size());
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import org.dsa.iot.alarm.AlarmPathCounts.PathCount;
+import org.dsa.iot.dslink.methods.StreamState;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.table.Row;
+import org.dsa.iot.dslink.node.actions.table.Table;
+import org.dsa.iot.dslink.node.actions.table.Table.Mode;
+import org.dsa.iot.dslink.node.value.Value;
+
+/**
+ * Action handler for sending a stream of path counts.  The initial set is sent, and after
+ * that all counts passed to the update method that are within the prefix and depth of the
+ * request are sent.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmPathCountStreamer extends AlarmActionHandler implements AlarmConstants {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private boolean closedLocally = false;
+    private int depth;
+    private List<PathCount> initialSet;
+    private Collection listenerContainer;
+    private String prefix;
+    private int prefixDepth;
+    private ActionResult request;
+    private Table table;
+    private LinkedList<PathCount> updates = new LinkedList<>();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Will set this as the close handler on the given request and will add/remove itself from the
+     * given listenerContainer.
+     *
+     * @param listenerContainer Optional, where to add and remove this instance.  If this is null,
+     *                          then no updates will be sent (ie only the initial set will be
+     *                          sent).
+     * @param prefix            Normalized path prefix, see AlarmPathCounts.normalize.
+     * @param depth             Levels below the prefix to send.
+     */
+    public AlarmPathCountStreamer(Collection listenerContainer, ActionResult request,
+                                  String prefix, int depth) {
+        this.prefix = prefix;
+        this.prefixDepth = "/".equals(prefix) ? 0 : prefix.split("/").length - 1;
+        this.depth = depth;
+        request.setCloseHandler(this);
+        this.listenerContainer = listenerContainer;
+        if (listenerContainer != null) {
+            synchronized (listenerContainer) {
+                listenerContainer.add(this);
+            }
+        }
+        this.request = request;
+        request.setStreamState(StreamState.INITIALIZED);
+        this.table = request.getTable();
+        if (listenerContainer != null) {
+            table.setMode(Mode.STREAM);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Force closes the stream.
+     */
+    public void close() {
+        closedLocally = true;
+    }
+
+    /**
+     * Does not return until there is an update, or the stream is closed.
+     *
+     * @return Possibly null if the stream is closed.
+     */
+    public PathCount getNextUpdate() {
+        synchronized (updates) {
+            while (isValid() && (updates.size() == 0)) {
+                try {
+                    updates.wait(5000);
+                } catch (Exception ignore) {
+                }
+                if (updates.size() > 0) {
+                    return updates.removeFirst();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True if there are pending updates.
+     */
+    public synchronized boolean hasUpdates() {
+        return updates.size() > 0;
+    }
+
+    /**
+     * True if both sides of the connection are open.
+     */
+    public boolean isValid() {
+        return isOpen() && !closedLocally;
+    }
+
+    /**
+     * True if the count is within the prefix and depth of the request.
+     */
+    public boolean isWanted(PathCount count) {
+        if ((count.depth < prefixDepth) || (count.depth > (prefixDepth + depth))) {
+            return false;
+        }
+        if (prefixDepth == 0) {
+            return true;
+        }
+        String path = count.getPath();
+        return path.startsWith(prefix)
+                && ((path.length() == prefix.length()) || (path.charAt(prefix.length()) == '/'));
+    }
+
+    /**
+     * Sends the initial set of counts (if not null), then sends updates until the stream is
+     * closed.
+     */
+    public void run() {
+        if (initialSet != null) {
+            for (PathCount count : initialSet) {
+                if (!isValid()) {
+                    break;
+                }
+                encode(count);
+            }
+        }
+        if (isValid() && (listenerContainer != null)) {
+            request.setStreamState(StreamState.OPEN);
+            table.setMode(Mode.STREAM);
+            table.sendReady();
+            // Fail if we can't get a response.  Otherwise we could buffer updates
+            // until we run out of memeory.
+            table.waitForStream(WAIT_FOR_STREAM, true);
+        }
+        initialSet = null;
+        PathCount count;
+        if (listenerContainer != null) {
+            while (isValid()) {
+                count = getNextUpdate();
+                if (count != null) {
+                    encode(count);
+                }
+            }
+        }
+        if (isOpen()) {
+            request.setStreamState(StreamState.CLOSED);
+            table.close();
+            close();
+        }
+        updates = null;
+        if (listenerContainer != null) {
+            synchronized (listenerContainer) {
+                listenerContainer.remove(this);
+            }
+        }
+    }
+
+    /**
+     * The initial set can be assigned after construction so that the query happens after
+     * this is listening for updates, and nothing falls between the two.  Must be called
+     * before run.
+     */
+    public void setInitialSet(List<PathCount> initialSet) {
+        this.initialSet = initialSet;
+    }
+
+    /**
+     * Adds the count to the update queue if it is within the prefix and depth.
+     */
+    public void update(PathCount count) {
+        if (isValid() && isWanted(count)) {
+            synchronized (updates) {
+                updates.add(count);
+                updates.notify();
+            }
+        }
+    }
+
+    private void encode(PathCount count) {
+        table.addRow(Row.make(new Value(count.getPath()),
+                              new Value(count.open),
+                              new Value(count.alarms),
+                              new Value(count.unacked)));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+} //class
+
+
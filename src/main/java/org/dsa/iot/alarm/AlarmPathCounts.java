@@ -0,0 +1,321 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Open, in alarm and unacked counts rolled up by source path.  This is a trie of source
+ * path segments where each node counts every record at or below it.  It is maintained
+ * incrementally: the flags last applied for each record are remembered, so a change only
+ * applies the difference along the record's path.  Nodes are pruned when their counts
+ * reach zero.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmPathCounts {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int OPEN = 1;
+    private static final int ALARM = 2;
+    private static final int UNACKED = 4;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private HashMap<UUID, Entry> records = new HashMap<>();
+    private PathNode root = new PathNode(null, "");
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Removes everything.
+     *
+     * @return The nodes that had non-zero counts, now zeroed.
+     */
+    synchronized List<PathCount> clear() {
+        ArrayList<PathCount> changed = new ArrayList<>();
+        collect(root, Integer.MAX_VALUE, changed);
+        for (PathCount count : changed) {
+            count.open = 0;
+            count.alarms = 0;
+            count.unacked = 0;
+        }
+        records.clear();
+        root = new PathNode(null, "");
+        return changed;
+    }
+
+    /**
+     * Returns the counts of the prefix node and its descendants to the given depth.
+     *
+     * @param prefix Source path prefix, null or empty for the root.
+     * @param depth  Levels below the prefix, 0 for only the prefix.
+     * @return Empty if there are no records under the prefix.
+     */
+    synchronized List<PathCount> get(String prefix, int depth) {
+        ArrayList<PathCount> ret = new ArrayList<>();
+        PathNode node = root;
+        for (String segment : split(prefix)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return ret;
+            }
+        }
+        collect(node, depth, ret);
+        return ret;
+    }
+
+    /**
+     * Replaces all state with the given open records, the cursor is closed.
+     */
+    synchronized void rebuild(AlarmCursor cursor) {
+        records.clear();
+        root = new PathNode(null, "");
+        try {
+            while (cursor.next()) {
+                update(cursor, null);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes the record from the counts.
+     *
+     * @return The nodes whose counts changed, possibly empty.
+     */
+    synchronized List<PathCount> remove(UUID uuid) {
+        ArrayList<PathCount> changed = new ArrayList<>();
+        Entry entry = records.remove(uuid);
+        if (entry != null) {
+            apply(entry.path, entry.flags, 0, changed);
+        }
+        return changed;
+    }
+
+    /**
+     * Applies the current state of the record.
+     *
+     * @return The nodes whose counts changed, possibly empty.
+     */
+    synchronized List<PathCount> update(AlarmRecord record) {
+        ArrayList<PathCount> changed = new ArrayList<>();
+        update(record, changed);
+        return changed;
+    }
+
+    /**
+     * Normalizes a source path into the form used by PathCount.getPath.
+     */
+    static String normalize(String path) {
+        StringBuilder buf = new StringBuilder();
+        for (String segment : split(path)) {
+            buf.append('/').append(segment);
+        }
+        if (buf.length() == 0) {
+            return "/";
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Adds the difference between the old and new flags to every node along the path,
+     * creating and pruning nodes as needed.
+     */
+    private void apply(String[] path, int oldFlags, int newFlags, List<PathCount> changed) {
+        if (oldFlags == newFlags) {
+            return;
+        }
+        int open = delta(oldFlags, newFlags, OPEN);
+        int alarms = delta(oldFlags, newFlags, ALARM);
+        int unacked = delta(oldFlags, newFlags, UNACKED);
+        PathNode node = root;
+        node.add(open, alarms, unacked, changed);
+        for (String segment : path) {
+            PathNode child = node.children.get(segment);
+            if (child == null) {
+                child = new PathNode(node, segment);
+                node.children.put(segment, child);
+            }
+            node = child;
+            node.add(open, alarms, unacked, changed);
+        }
+        //Prune from the leaf up.
+        while ((node != root) && node.isEmpty()) {
+            node.parent.children.remove(node.segment);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Adds snapshots of the node and its descendants to the given depth.
+     */
+    private void collect(PathNode node, int depth, List<PathCount> bucket) {
+        if (node.isEmpty() && (node != root)) {
+            return;
+        }
+        bucket.add(node.snapshot());
+        if (depth > 0) {
+            for (PathNode child : node.children.values()) {
+                collect(child, depth - 1, bucket);
+            }
+        }
+    }
+
+    private static int delta(int oldFlags, int newFlags, int flag) {
+        return ((newFlags & flag) != 0 ? 1 : 0) - ((oldFlags & flag) != 0 ? 1 : 0);
+    }
+
+    private static int flags(AlarmRecord record) {
+        int ret = 0;
+        if (record.isOpen()) {
+            ret |= OPEN;
+        }
+        if (!record.isNormal()) {
+            ret |= ALARM;
+        }
+        if (record.isAckRequired() && !record.isAcknowledged()) {
+            ret |= UNACKED;
+        }
+        return ret;
+    }
+
+    private static String[] split(String path) {
+        if ((path == null) || path.isEmpty()) {
+            return new String[0];
+        }
+        ArrayList<String> list = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                list.add(segment);
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    private void update(AlarmRecord record, List<PathCount> changed) {
+        int flags = flags(record);
+        Entry entry = records.get(record.getUuid());
+        if (entry == null) {
+            if (flags == 0) {
+                return;
+            }
+            entry = new Entry(split(record.getSourcePath()));
+            records.put(record.getUuid(), entry);
+        }
+        apply(entry.path, entry.flags, flags, changed);
+        entry.flags = flags;
+        if (flags == 0) {
+            //A reopened record is re-added with its path.
+            records.remove(record.getUuid());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The path and flags last applied for a record.
+     */
+    private static class Entry {
+
+        int flags;
+        String[] path;
+
+        Entry(String[] path) {
+            this.path = path;
+        }
+
+    }
+
+    /**
+     * A snapshot of the counts at a path.
+     */
+    static class PathCount {
+
+        int alarms;
+        int depth;
+        int open;
+        String path;
+        int unacked;
+
+        String getPath() {
+            return path;
+        }
+
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private static class PathNode {
+
+        int alarms;
+        Map<String, PathNode> children = new TreeMap<>();
+        int depth;
+        int open;
+        PathNode parent;
+        String path;
+        String segment;
+        int unacked;
+
+        PathNode(PathNode parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+            if (parent == null) {
+                path = "/";
+            } else if (parent.parent == null) {
+                path = "/" + segment;
+                depth = 1;
+            } else {
+                path = parent.path + '/' + segment;
+                depth = parent.depth + 1;
+            }
+        }
+
+        void add(int open, int alarms, int unacked, List<PathCount> changed) {
+            this.open += open;
+            this.alarms += alarms;
+            this.unacked += unacked;
+            if ((changed != null) && ((open != 0) || (alarms != 0) || (unacked != 0))) {
+                changed.add(snapshot());
+            }
+        }
+
+        boolean isEmpty() {
+            return (open == 0) && (alarms == 0) && (unacked == 0);
+        }
+
+        PathCount snapshot() {
+            PathCount ret = new PathCount();
+            ret.path = path;
+            ret.depth = depth;
+            ret.open = open;
+            ret.alarms = alarms;
+            ret.unacked = unacked;
+            return ret;
+        }
+
+    }
+
+}
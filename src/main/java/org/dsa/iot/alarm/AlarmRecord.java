@@ -31,8 +31,11 @@ public class AlarmRecord {
     private AlarmState alarmType;
     private long createdTime;
     private boolean hasNotes = false;
+    private long lastOccurrence;
     private String message;
     private long normalTime;
+    private int occurrences = 1;
+    private long sequence;
     private String sourcePath;
     private UUID uuid;
     private AlarmWatch watch;
@@ -55,8 +58,11 @@ public class AlarmRecord {
         alarmType = record.alarmType;
         createdTime = record.createdTime;
         hasNotes = record.hasNotes;
+        lastOccurrence = record.lastOccurrence;
         message = record.message;
         normalTime = record.normalTime;
+        occurrences = record.occurrences;
+        sequence = record.sequence;
         sourcePath = record.sourcePath;
         uuid = record.uuid;
         watch = record.watch;
@@ -108,6 +114,17 @@ public class AlarmRecord {
         return createdTime;
     }
 
+    /**
+     * The instant of the most recent occurrence, which is the created time unless the
+     * record was reopened.
+     */
+    public long getLastOccurrence() {
+        if (lastOccurrence > 0) {
+            return lastOccurrence;
+        }
+        return createdTime;
+    }
+
     /**
      * Brief description of the alarm.
      */
@@ -123,6 +140,14 @@ public class AlarmRecord {
         return normalTime;
     }
 
+    /**
+     * The number of times the alarm occurred, greater than one if the record was reopened
+     * by a repeat occurrence.
+     */
+    public int getOccurrences() {
+        return occurrences;
+    }
+
     /**
      * If the alarm watch is non-null, that will be returned, otherwise the alarm class will be
      * returned.
@@ -134,6 +159,14 @@ public class AlarmRecord {
         return alarmClass;
     }
 
+    /**
+     * The change sequence number of the most recent mutation of this record, or zero if
+     * unknown.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
     /**
      * The path to the alarmable entity.
      */
@@ -216,8 +249,11 @@ public class AlarmRecord {
         alarmType = null;
         createdTime = 0;
         hasNotes = false;
+        lastOccurrence = 0;
         message = null;
         normalTime = 0;
+        occurrences = 1;
+        sequence = 0;
         sourcePath = null;
         uuid = null;
         watch = null;
@@ -293,6 +329,14 @@ public class AlarmRecord {
         return this;
     }
 
+    /**
+     * The instant of the most recent occurrence.
+     */
+    public AlarmRecord setLastOccurrence(long lastOccurrence) {
+        this.lastOccurrence = lastOccurrence;
+        return this;
+    }
+
     /**
      * Brief description of the alarm.
      */
@@ -310,6 +354,22 @@ public class AlarmRecord {
         return this;
     }
 
+    /**
+     * The number of times the alarm occurred.
+     */
+    public AlarmRecord setOccurrences(int occurrences) {
+        this.occurrences = occurrences;
+        return this;
+    }
+
+    /**
+     * The change sequence number of the most recent mutation of this record.
+     */
+    public AlarmRecord setSequence(long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
     /**
      * The path to the alarmable entity.
      */
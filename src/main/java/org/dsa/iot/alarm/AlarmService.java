@@ -13,9 +13,16 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.dsa.iot.alarm.AlarmPathCounts.PathCount;
+import org.dsa.iot.alarm.AlarmTopSources.Counter;
 import org.dsa.iot.dslink.DSLink;
 import org.dsa.iot.dslink.link.Requester;
 import org.dsa.iot.dslink.methods.StreamState;
@@ -49,19 +56,63 @@ public class AlarmService extends AbstractAlarmObject {
     // Constants
     ///////////////////////////////////////////////////////////////////////////
 
+    static final String CHANGE_LOG_SIZE = "Change Log Size";
+    static final String COUNT_UPDATE_INTERVAL = "Count Update Interval";
+    static final String COUNT_UPDATES_SENT = "Count Updates Sent";
+    static final String COUNT_UPDATES_SUPPRESSED = "Count Updates Suppressed";
+    static final String DEPTH = "Depth";
+    static final String EVALUATION_THREADS = "Evaluation Threads";
+    static final String EVALUATIONS_COALESCED = "Evaluations Coalesced";
+    static final String EVALUATIONS_PENDING = "Evaluations Pending";
+    static final String EXECUTE_CYCLE_TIME = "Execute Cycle Time";
+    static final String EXECUTE_THREADS = "Execute Threads";
+    static final String GROUP_BY = "Group By";
+    static final String LEAN_PUBLISH_INTERVAL = "Lean Publish Interval";
+    static final String LEAN_WATCHES = "Lean Watches";
+    static final String LIMIT = "Limit";
     static final String LOG_LEVEL = "Log Level";
     static final String NEXT_HANDLE = "nextHandle";
+    static final String PREFIX = "Prefix";
+    static final String STALE_WATCHES = "Stale Watches";
+    static final String SUBSCRIBED_WATCHES = "Subscribed Watches";
+    static final String SUBSCRIBE_RATE_MAX = "Subscribe Rate Max";
+    static final String SUBSCRIBE_RATE_START = "Subscribe Rate Start";
+    static final String SUBSCRIPTIONS = "Subscriptions";
+    static final String SUBSCRIPTIONS_PENDING = "Subscriptions Pending";
+    static final String WINDOW = "Window";
 
     ///////////////////////////////////////////////////////////////////////////
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
     private AlarmLinkHandler alarmLinkHandler;
+    //Seeded with the clock so sequence numbers keep increasing across restarts.
+    private AlarmChangeLog changeLog = new AlarmChangeLog(10000, System.currentTimeMillis());
+    private AtomicBoolean countUpdateScheduled = new AtomicBoolean(false);
+    private AtomicLong countUpdatesSent = new AtomicLong();
+    private AtomicLong countUpdatesSuppressed = new AtomicLong();
+    private volatile AlarmLanes evaluationLanes;
+    private AtomicLong evaluationsCoalesced = new AtomicLong();
+    private AtomicInteger evaluationsPending = new AtomicInteger();
+    private ArrayList<AlarmEventStreamer> eventStreamListenerCache = new ArrayList<>();
+    private HashSet<AlarmEventStreamer> eventStreamListeners = new HashSet<>();
+    private AlarmHistogram executeCycleTimes = new AlarmHistogram();
     private ScheduledFuture executeFuture;
-    private boolean executing = false;
+    private ForkJoinPool executePool;
     private HashMap<Number, AlarmObject> handles = new HashMap<>();
+    private long lastEventPurge = -1;
+    private volatile long leanPublishInterval;
+    private volatile boolean leanWatches;
     private ArrayList<AlarmStreamer> openAlarmStreamListenerCache = new ArrayList<>();
     private HashSet<AlarmStreamer> openAlarmStreamListeners = new HashSet<>();
+    private ArrayList<AlarmPathCountStreamer> pathCountListenerCache = new ArrayList<>();
+    private HashSet<AlarmPathCountStreamer> pathCountListeners = new HashSet<>();
+    private AlarmPathCounts pathCounts = new AlarmPathCounts();
+    private AlarmSubscriptions subscriptions = new AlarmSubscriptions(this);
+    private ScheduledFuture subscriptionsFuture;
+    private TimingWheel timingWheel = new TimingWheel(100, 1024);
+    private ScheduledFuture timingWheelFuture;
+    private AlarmTopSources topSources = new AlarmTopSources();
     private boolean updateCounts = true;
     private boolean updating = false;
 
@@ -138,7 +189,25 @@ public class AlarmService extends AbstractAlarmObject {
                                       String sourcePath,
                                       AlarmState createState,
                                       String message) {
+        return createAlarm(alarmClass, watch, sourcePath, createState, message, true);
+    }
+
+    /**
+     * Creates the alarm record, but if limit is true and the alarm class is flooding, the
+     * record is suppressed and null is returned.
+     *
+     * @return Null if suppressed.
+     */
+    AlarmRecord createAlarm(AlarmClass alarmClass,
+                            AlarmWatch watch,
+                            String sourcePath,
+                            AlarmState createState,
+                            String message,
+                            boolean limit) {
         checkSteady();
+        if (limit && !alarmClass.admitAlarm()) {
+            return null;
+        }
         long now = System.currentTimeMillis();
         UUID uuid = null;
         synchronized (this) {
@@ -157,6 +226,7 @@ public class AlarmService extends AbstractAlarmObject {
                                   + "= "
                                   + uuid);
         Alarming.getProvider().addAlarm(alarmRecord);
+        topSources.record(sourcePath, watch == null ? null : watch.getNode().getPath());
         updateCounts();
         return alarmRecord;
     }
@@ -171,8 +241,7 @@ public class AlarmService extends AbstractAlarmObject {
                 throw new NullPointerException("Missing " + UUID_STR);
             }
             AlarmUtil.logTrace(getNode().getPath() + " deleting alarm " + uuid);
-            Alarming.getProvider().deleteRecord(UUID.fromString(uuid.getString()));
-            updateCounts();
+            deleteRecord(UUID.fromString(uuid.getString()));
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
             AlarmUtil.throwRuntime(x);
@@ -180,10 +249,37 @@ public class AlarmService extends AbstractAlarmObject {
     }
 
     /**
-     * Schedules execute in the daemon thread pool.
+     * Sizes the change log.
+     */
+    @Override
+    protected void doStart() {
+        changeLog.setCapacity(getProperty(CHANGE_LOG_SIZE).getNumber().intValue());
+        updateLeanWatches();
+    }
+
+    /**
+     * Schedules execute and the timing wheel in the daemon thread pool.
      */
     @Override
     protected void doSteady() {
+        int threads = getProperty(EXECUTE_THREADS).getNumber().intValue();
+        executePool = new ForkJoinPool(Math.max(1, threads));
+        threads = getProperty(EVALUATION_THREADS).getNumber().intValue();
+        evaluationLanes = new AlarmLanes(threads, "Alarm Evaluation");
+        timingWheelFuture = Objects.getDaemonThreadPool().scheduleAtFixedRate(
+                timingWheel, timingWheel.getTickMillis(), timingWheel.getTickMillis(),
+                TimeUnit.MILLISECONDS);
+        updateSubscribeRates();
+        subscriptionsFuture = Objects.getDaemonThreadPool().scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        subscriptions.run();
+                        publishSubscriptionProgress();
+                        publishEvaluationMetrics();
+                    }
+                }, AlarmSubscriptions.TICK_MILLIS, AlarmSubscriptions.TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
         try {
             Alarming.getProvider().start(this);
             syncWatchesToDatabase();
@@ -197,45 +293,84 @@ public class AlarmService extends AbstractAlarmObject {
         } catch (Exception x) {
             AlarmUtil.logError("Starting provider", x);
         }
+        try {
+            pathCounts.rebuild(Alarming.getProvider().queryOpenAlarms(null));
+        } catch (Exception x) {
+            AlarmUtil.logError("Rebuilding path counts", x);
+        }
     }
 
     /**
-     * Cancels the execute callback.
+     * Cancels the execute and timing wheel callbacks.
      */
     @Override
     protected void doStop() {
         if (executeFuture != null) {
             executeFuture.cancel(false);
         }
+        if (timingWheelFuture != null) {
+            timingWheelFuture.cancel(false);
+            timingWheelFuture = null;
+        }
+        if (subscriptionsFuture != null) {
+            subscriptionsFuture.cancel(false);
+            subscriptionsFuture = null;
+        }
+        if (executePool != null) {
+            executePool.shutdown();
+            executePool = null;
+        }
+        if (evaluationLanes != null) {
+            evaluationLanes.shutdown();
+            evaluationLanes = null;
+        }
         Alarming.getProvider().stop();
     }
 
     /**
-     * Housekeeping, called by an executor.  Enforces max records and max record age.
+     * Housekeeping, called by an executor.  Each alarm class is executed in the bounded
+     * execute pool so a slow class doesn't delay the others.  A class still executing from
+     * a previous cycle is skipped.  When every class of the cycle completes, the cycle time
+     * is recorded and counts are updated.
      */
     protected void execute() {
-        if (!isSteady()) {
+        final ForkJoinPool pool = executePool;
+        if (!isSteady() || (pool == null)) {
             return;
         }
-        synchronized (this) {
-            if (executing) {
-                return;
-            }
-            executing = true;
-        }
+        final long start = System.currentTimeMillis();
         try {
+            ArrayList<AlarmClass> classes = new ArrayList<>();
             AlarmObject child;
             for (int i = 0, len = childCount(); i < len; i++) {
                 child = getChild(i);
                 if (child instanceof AlarmClass) {
-                    ((AlarmClass) child).execute();
+                    if (((AlarmClass) child).beginExecute()) {
+                        classes.add((AlarmClass) child);
+                    }
                 }
             }
-            updateCounts(false);
+            if (classes.isEmpty()) {
+                updateCounts(false);
+                return;
+            }
+            final AtomicInteger pending = new AtomicInteger(classes.size());
+            for (final AlarmClass alarmClass : classes) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            alarmClass.executeTimed();
+                        } finally {
+                            if (pending.decrementAndGet() == 0) {
+                                endExecuteCycle(start);
+                            }
+                        }
+                    }
+                });
+            }
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
-        } finally {
-            executing = false;
         }
     }
 
@@ -298,8 +433,7 @@ public class AlarmService extends AbstractAlarmObject {
         action = new Action(Permission.WRITE, new Handler<ActionResult>() {
             @Override
             public void handle(ActionResult event) {
-                Alarming.getProvider().deleteAllRecords();
-                updateCounts();
+                deleteAllRecords();
             }
         });
         getNode().createChild("Delete All Records", false)
@@ -358,11 +492,87 @@ public class AlarmService extends AbstractAlarmObject {
         action.setResultType(ResultType.STREAM);
         action.addParameter(
                 new Parameter(STREAM_UPDATES, ValueType.BOOL, new Value(true)));
+        action.addParameter(
+                new Parameter(SINCE_SEQUENCE, ValueType.NUMBER, new Value(0)));
         AlarmUtil.encodeAlarmColumns(action);
         getNode().createChild("Get Open Alarms", false)
                  .setSerializable(false)
                  .setAction(action)
                  .build();
+        //Get Counts By Path
+        action = new Action(Permission.READ, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                getCountsByPath(event);
+            }
+        });
+        action.setResultType(ResultType.STREAM);
+        action.addParameter(new Parameter(PREFIX, ValueType.STRING, new Value("")));
+        action.addParameter(new Parameter(DEPTH, ValueType.NUMBER, new Value(1)));
+        action.addParameter(
+                new Parameter(STREAM_UPDATES, ValueType.BOOL, new Value(false)));
+        action.addResult(new Parameter(PATH, ValueType.STRING));
+        action.addResult(new Parameter(OPEN, ValueType.NUMBER));
+        action.addResult(new Parameter("In Alarm", ValueType.NUMBER));
+        action.addResult(new Parameter(UNACKED, ValueType.NUMBER));
+        getNode().createChild("Get Counts By Path", false)
+                 .setSerializable(false)
+                 .setAction(action)
+                 .build();
+        //Get Top Sources
+        action = new Action(Permission.READ, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                getTopSources(event);
+            }
+        });
+        action.setResultType(ResultType.TABLE);
+        action.addParameter(new Parameter(WINDOW, ValueType.makeEnum(
+                AlarmTopSources.HOUR, AlarmTopSources.DAY, AlarmTopSources.WEEK),
+                                          new Value(AlarmTopSources.HOUR)));
+        action.addParameter(new Parameter(GROUP_BY, ValueType.makeEnum(
+                SOURCE_PATH, WATCH_PATH), new Value(SOURCE_PATH)));
+        action.addParameter(new Parameter(LIMIT, ValueType.NUMBER, new Value(10)));
+        action.addResult(new Parameter(PATH, ValueType.STRING));
+        action.addResult(new Parameter("Count", ValueType.NUMBER));
+        action.addResult(new Parameter("Error", ValueType.NUMBER));
+        getNode().createChild("Get Top Sources", false)
+                 .setSerializable(false)
+                 .setAction(action)
+                 .build();
+        //Get Execute Histogram
+        action = new Action(Permission.READ, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                getExecuteHistogram(event);
+            }
+        });
+        action.setResultType(ResultType.TABLE);
+        action.addResult(new Parameter("Less Than ms", ValueType.NUMBER));
+        action.addResult(new Parameter("Count", ValueType.NUMBER));
+        getNode().createChild("Get Execute Histogram", false)
+                 .setSerializable(false)
+                 .setAction(action)
+                 .build();
+        //Get Changes Since
+        action = new Action(Permission.READ, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                getChangesSince(event);
+            }
+        });
+        action.setResultType(ResultType.STREAM);
+        action.addParameter(
+                new Parameter(SINCE_SEQUENCE, ValueType.NUMBER, new Value(0)));
+        action.addParameter(
+                new Parameter(SINCE_TIME, ValueType.STRING, new Value("")));
+        action.addParameter(
+                new Parameter(STREAM_UPDATES, ValueType.BOOL, new Value(true)));
+        AlarmUtil.encodeEventColumns(action);
+        getNode().createChild("Get Changes Since", false)
+                 .setSerializable(false)
+                 .setAction(action)
+                 .build();
         //Get Alarm Page
         action = new Action(Permission.READ, new Handler<ActionResult>() {
             @Override
@@ -463,17 +673,64 @@ public class AlarmService extends AbstractAlarmObject {
         initAttribute("icon", new Value("service.png"));
         initConfig(NEXT_HANDLE, new Value(1), true);
         initProperty(ENABLED, new Value(true)).setWritable(Writable.CONFIG);
+        initProperty(CHANGE_LOG_SIZE, new Value(10000)).setWritable(Writable.CONFIG);
+        initProperty(COUNT_UPDATE_INTERVAL, new Value(1000)).createFakeBuilder()
+                                                            .setConfig("unit", new Value("ms"))
+                                                            .setWritable(Writable.CONFIG);
+        initProperty(COUNT_UPDATES_SENT, new Value(0)).createFakeBuilder()
+                                                      .setSerializable(false)
+                                                      .setWritable(Writable.NEVER);
+        initProperty(COUNT_UPDATES_SUPPRESSED, new Value(0)).createFakeBuilder()
+                                                            .setSerializable(false)
+                                                            .setWritable(Writable.NEVER);
+        initProperty(EXECUTE_THREADS,
+                     new Value(Math.min(4, Runtime.getRuntime().availableProcessors())))
+                .setWritable(Writable.CONFIG);
+        initProperty(EVALUATION_THREADS,
+                     new Value(Runtime.getRuntime().availableProcessors()))
+                .setWritable(Writable.CONFIG);
+        initProperty(EVALUATIONS_PENDING, new Value(0)).createFakeBuilder()
+                                                       .setSerializable(false)
+                                                       .setWritable(Writable.NEVER);
+        initProperty(EVALUATIONS_COALESCED, new Value(0)).createFakeBuilder()
+                                                         .setSerializable(false)
+                                                         .setWritable(Writable.NEVER);
+        initProperty(EXECUTE_CYCLE_TIME, new Value("")).createFakeBuilder()
+                                                       .setSerializable(false)
+                                                       .setWritable(Writable.NEVER);
         initProperty("Help", new Value(
                 "https://github.com/IOT-DSA/dslink-java-alarm/blob/master/Alarm-Link-User-Guide.pdf"))
                 .createFakeBuilder()
                 .setSerializable(false)
                 .setWritable(Writable.NEVER);
+        initProperty(LEAN_WATCHES, new Value(false)).setWritable(Writable.CONFIG);
+        initProperty(LEAN_PUBLISH_INTERVAL, new Value(60)).createFakeBuilder()
+                                                          .setConfig("unit", new Value("sec"))
+                                                          .setWritable(Writable.CONFIG);
         initProperty(IN_ALARM_COUNT, new Value(0)).createFakeBuilder()
                                                   .setSerializable(false)
                                                   .setWritable(Writable.NEVER);
         initProperty(OPEN_ALARM_COUNT, new Value(0)).createFakeBuilder()
                                                     .setSerializable(false)
                                                     .setWritable(Writable.NEVER);
+        initProperty(SUBSCRIBE_RATE_START, new Value(200)).createFakeBuilder()
+                                                          .setConfig("unit", new Value("/s"))
+                                                          .setWritable(Writable.CONFIG);
+        initProperty(SUBSCRIBE_RATE_MAX, new Value(2000)).createFakeBuilder()
+                                                         .setConfig("unit", new Value("/s"))
+                                                         .setWritable(Writable.CONFIG);
+        initProperty(SUBSCRIPTIONS, new Value(0)).createFakeBuilder()
+                                                 .setSerializable(false)
+                                                 .setWritable(Writable.NEVER);
+        initProperty(SUBSCRIPTIONS_PENDING, new Value(0)).createFakeBuilder()
+                                                         .setSerializable(false)
+                                                         .setWritable(Writable.NEVER);
+        initProperty(SUBSCRIBED_WATCHES, new Value(0)).createFakeBuilder()
+                                                      .setSerializable(false)
+                                                      .setWritable(Writable.NEVER);
+        initProperty(STALE_WATCHES, new Value(0)).createFakeBuilder()
+                                                 .setSerializable(false)
+                                                 .setWritable(Writable.NEVER);
         initProperty(TTL_ALARM_COUNT, new Value(0)).createFakeBuilder()
                                                    .setSerializable(false)
                                                    .setWritable(Writable.NEVER);
@@ -490,6 +747,12 @@ public class AlarmService extends AbstractAlarmObject {
         if (!valuePair.getCurrent().equals(valuePair.getPrevious())) {
             if (EXTERNAL_DB_ACCESS_ENABLED.equals(child.getName())) {
                 Alarming.getProvider().changeDatabaseAccessTo(valuePair.getCurrent().getBool());
+            } else if (CHANGE_LOG_SIZE.equals(child.getName())) {
+                changeLog.setCapacity(valuePair.getCurrent().getNumber().intValue());
+            } else if (child.getName().startsWith("Subscribe Rate")) {
+                updateSubscribeRates();
+            } else if (child.getName().startsWith("Lean ")) {
+                updateLeanWatches();
             }
         }
         super.onPropertyChange(child, valuePair);
@@ -512,16 +775,118 @@ public class AlarmService extends AbstractAlarmObject {
     }
 
     /**
-     * Use this for subscribing to alarm sources, the SDK cannot handle multiple subscribers to the
-     * same path.
-     SubscriptionHelper getSubscriptions() {
-     Requester requester = getRequester();
-     if (requester != null) {
-     return requester.getSubscriptionHelper();
-     }
-     return null;
-     }
+     * Shares, queues and throttles requester subscriptions for the watches.
+     */
+    AlarmSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Publishes a mutation the provider reserved a sequence number for.  The record goes
+     * into the change log and the event to the Get Changes Since streams, both in sequence
+     * order, so nothing is published until every earlier number has completed.
+     *
+     * @param sequence From nextSequence.
+     * @param record   Optional, null if the mutation failed or has no record.
+     * @param event    Optional, null if the mutation failed or wasn't an event.
+     */
+    void completeSequence(long sequence, AlarmRecord record, AlarmEvent event) {
+        //Notify while holding the log so another thread can't publish later events first.
+        synchronized (changeLog) {
+            for (AlarmEvent published : changeLog.complete(sequence, record, event)) {
+                notifyEvent(published);
+            }
+        }
+    }
+
+    /**
+     * Removes all records from the provider and all derived state.
+     */
+    void deleteAllRecords() {
+        Alarming.getProvider().deleteAllRecords();
+        notifyPathCounts(pathCounts.clear());
+        topSources.clear();
+        updateCounts();
+    }
+
+    /**
+     * Removes the record from the provider and all derived state.  All deletes should go
+     * through here.
+     */
+    void deleteRecord(UUID uuid) {
+        Alarming.getProvider().deleteRecord(uuid);
+        notifyPathCounts(pathCounts.remove(uuid));
+        updateCounts();
+    }
+
+    /**
+     * Runs the watch on the evaluation lane of its handle, so evaluations of the same
+     * watch are ordered and never overlap.
+     *
+     * @return False if the service isn't running.
+     */
+    boolean evaluate(AlarmWatch watch) {
+        AlarmLanes lanes = evaluationLanes;
+        if (lanes == null) {
+            return false;
+        }
+        return lanes.execute(watch.getHandle(), watch);
+    }
+
+    /**
+     * Called by a watch when it requests an evaluation.
+     *
+     * @param coalesced True if an evaluation was already pending so none was queued.
+     */
+    void evaluationQueued(boolean coalesced) {
+        if (coalesced) {
+            evaluationsCoalesced.incrementAndGet();
+        } else {
+            evaluationsPending.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called by a watch when it is about to be evaluated.
+     */
+    void evaluationStarted() {
+        evaluationsPending.decrementAndGet();
+    }
+
+    /**
+     * Runs the task on the evaluation lane of the watch, so it is ordered with the
+     * evaluations of the watch.  Anything that creates or closes records for a watch
+     * should go through here or evaluate.  If the service isn't running, the task is run
+     * on the calling thread.
+     */
+    void executeOnLane(AlarmWatch watch, Runnable task) {
+        AlarmLanes lanes = evaluationLanes;
+        if ((lanes == null) || !lanes.execute(watch.getHandle(), task)) {
+            task.run();
+        }
+    }
+
+    /**
+     * The sequence number of the most recent record mutation.
      */
+    long getLastSequence() {
+        return changeLog.getLastSequence();
+    }
+
+    /**
+     * How often lean watches publish their value properties when no client is subscribed
+     * to them, in millis.  Zero or less means only publish to subscribed clients.
+     */
+    long getLeanPublishInterval() {
+        return leanPublishInterval;
+    }
+
+    /**
+     * The shared timer for large numbers of one-shot timeouts, such as inhibit expiry.
+     */
+    TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
 
     /**
      * Adds all child watch objects to the given bucket.
@@ -538,6 +903,40 @@ public class AlarmService extends AbstractAlarmObject {
         return set;
     }
 
+    /**
+     * When true, watches keep the current value and cov time in memory and only publish
+     * them as properties to subscribed clients, or at the lean publish interval.
+     */
+    boolean isLeanWatches() {
+        return leanWatches;
+    }
+
+    /**
+     * Reserves the next change sequence number.  Providers call this (through
+     * AbstractProvider) so that persisted events and the change log share one numbering.
+     * Every reserved number must be passed to completeSequence.
+     */
+    long nextSequence() {
+        return changeLog.next();
+    }
+
+    /**
+     * Notify all Get Changes Since streams of the given event.
+     */
+    void notifyEvent(AlarmEvent event) {
+        ArrayList<AlarmEventStreamer> list = eventStreamListenerCache;
+        synchronized (eventStreamListeners) {
+            if (eventStreamListeners.size() != list.size()) {
+                eventStreamListenerCache = new ArrayList<>();
+                list = eventStreamListenerCache;
+                list.addAll(eventStreamListeners);
+            }
+        }
+        for (int i = list.size(); --i >= 0; ) {
+            list.get(i).update(event);
+        }
+    }
+
     /**
      * Notify all getOpenAlarms streams of the given record.
      */
@@ -555,6 +954,80 @@ public class AlarmService extends AbstractAlarmObject {
         }
     }
 
+    /**
+     * Notify all Get Counts By Path streams of the changed counts.
+     */
+    void notifyPathCounts(List<PathCount> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        ArrayList<AlarmPathCountStreamer> list = pathCountListenerCache;
+        synchronized (pathCountListeners) {
+            if (pathCountListeners.size() != list.size()) {
+                pathCountListenerCache = new ArrayList<>();
+                list = pathCountListenerCache;
+                list.addAll(pathCountListeners);
+            }
+        }
+        for (int i = list.size(); --i >= 0; ) {
+            for (PathCount count : counts) {
+                list.get(i).update(count);
+            }
+        }
+    }
+
+    /**
+     * Reopens a record that returned to normal, because the alarm occurred again, then
+     * notifies the update streams.
+     */
+    void reopen(UUID uuidObj) {
+        try {
+            Alarming.getProvider().reopen(uuidObj);
+            AlarmRecord rec = Alarming.getProvider().getAlarm(uuidObj);
+            rec.getAlarmClass().scheduleEscalation(rec);
+            rec.getAlarmClass().notifyAllUpdates(rec);
+            updateCounts();
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+            AlarmUtil.throwRuntime(x);
+        }
+    }
+
+    /**
+     * Updates the path counts for the mutated record.  Called once for every create,
+     * acknowledge, return to normal and note.  The provider has normally already added the
+     * change to the log, if it didn't assign a sequence number the change is added here.
+     */
+    void recordChange(AlarmRecord record) {
+        if (record.getSequence() <= 0) {
+            long seq = nextSequence();
+            record.setSequence(seq);
+            completeSequence(seq, record, null);
+        }
+        notifyPathCounts(pathCounts.update(record));
+        updateCounts();
+    }
+
+    /**
+     * Returns the latest state of the records that changed after the given sequence number.
+     *
+     * @param since      Exclusive sequence number to replay after.
+     * @param alarmClass Optional, only replay records of this class.
+     * @return Null if the change log no longer covers the sequence, the caller should fall
+     * back to a full snapshot.
+     */
+    AlarmCursor replayChanges(long since, AlarmClass alarmClass) {
+        if (since <= 0) {
+            return null;
+        }
+        ArrayList<AlarmRecord> changes = changeLog.since(since, alarmClass);
+        if (changes == null) {
+            AlarmUtil.logInfo("Change log does not cover sequence " + since);
+            return null;
+        }
+        return new AlarmListCursor(changes);
+    }
+
     /**
      * Calls  Alarming.getProvider().returnToNormal() and notifies all update streams.
      */
@@ -570,15 +1043,56 @@ public class AlarmService extends AbstractAlarmObject {
         }
     }
 
+    /**
+     * Ensures future sequence numbers are greater than the given, which should be the last
+     * one persisted by the provider.
+     */
+    void seedSequence(long sequence) {
+        changeLog.seed(sequence);
+    }
+
     void setLinkHandler(AlarmLinkHandler arg) {
         alarmLinkHandler = arg;
     }
 
     /**
-     * Notify the service that counts need to be updated.
+     * Sets the count property only if the value is different, returns true if it was.
+     * Tracks how many count updates were sent and suppressed.
+     */
+    boolean publishCount(AbstractAlarmObject obj, String property, int count) {
+        Value current = obj.getProperty(property);
+        if ((current != null) && (current.getNumber() != null)
+                && (current.getNumber().intValue() == count)) {
+            countUpdatesSuppressed.incrementAndGet();
+            return false;
+        }
+        obj.setProperty(property, new Value(count));
+        countUpdatesSent.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Notify the service that counts need to be updated.  Notifications are coalesced over
+     * the count update interval, then the open, in alarm and unacked counts of the service
+     * are published from the incremental path counts.  The full recalculation, which
+     * queries every record for the totals and class counts, waits for the execute cycle.
      */
     void updateCounts() {
         updateCounts = true;
+        if (!isSteady()) {
+            return;
+        }
+        if (countUpdateScheduled.compareAndSet(false, true)) {
+            long delay = getProperty(COUNT_UPDATE_INTERVAL).getNumber().longValue();
+            AlarmUtil.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    //Clear first so notifications during the update schedule another.
+                    countUpdateScheduled.set(false);
+                    publishPathCounts();
+                }
+            }, Math.max(0, delay));
+        }
     }
 
     /**
@@ -634,10 +1148,11 @@ public class AlarmService extends AbstractAlarmObject {
                     Thread.yield();
                 }
             }
-            setProperty(IN_ALARM_COUNT, new Value(svc.alarms));
-            setProperty(OPEN_ALARM_COUNT, new Value(svc.open));
-            setProperty(TTL_ALARM_COUNT, new Value(svc.ttl));
-            setProperty(UNACKED_ALARM_COUNT, new Value(svc.unacked));
+            long sent = countUpdatesSent.get();
+            publishCount(this, IN_ALARM_COUNT, svc.alarms);
+            publishCount(this, OPEN_ALARM_COUNT, svc.open);
+            publishCount(this, TTL_ALARM_COUNT, svc.ttl);
+            publishCount(this, UNACKED_ALARM_COUNT, svc.unacked);
             AlarmObject obj;
             for (int i = childCount(); --i >= 0; ) {
                 obj = getChild(i);
@@ -646,6 +1161,12 @@ public class AlarmService extends AbstractAlarmObject {
                     clazz.updateCounts(map.get(clazz));
                 }
             }
+            //Only publish the metrics when something else was published.
+            if (sent != countUpdatesSent.get()) {
+                setProperty(COUNT_UPDATES_SENT, new Value(countUpdatesSent.get()));
+                setProperty(COUNT_UPDATES_SUPPRESSED,
+                            new Value(countUpdatesSuppressed.get()));
+            }
         } finally {
             updating = false;
         }
@@ -934,6 +1455,94 @@ public class AlarmService extends AbstractAlarmObject {
         AlarmUtil.run(streamer, "Get Alarms");
     }
 
+    /**
+     * Action handler for replaying the persisted change events after a sequence number
+     * and/or time, optionally followed by a stream of new events.
+     */
+    private void getChangesSince(final ActionResult event) {
+        long since = 0;
+        Value value = event.getParameter(SINCE_SEQUENCE);
+        if ((value != null) && (value.getNumber() != null)) {
+            since = value.getNumber().longValue();
+        }
+        Calendar from = null;
+        value = event.getParameter(SINCE_TIME);
+        if ((value != null) && (value.getString() != null) && !value.getString().isEmpty()) {
+            from = Calendar.getInstance();
+            TimeUtils.decode(value.getString(), from); //just fail fast if invalid
+        }
+        boolean updates = true;
+        value = event.getParameter(STREAM_UPDATES);
+        if ((value != null) && (value.getBool() != null)) {
+            updates = value.getBool();
+        }
+        AlarmEventStreamer streamer = null;
+        if (updates) {
+            streamer = new AlarmEventStreamer(eventStreamListeners, event, null);
+        } else {
+            streamer = new AlarmEventStreamer(null, event, null);
+        }
+        //Query after the streamer is listening so nothing is missed between the two.  Events
+        //after the last published sequence arrive as updates, in order.
+        streamer.setLastSequence(getLastSequence());
+        streamer.setInitialSet(Alarming.getProvider().queryEvents(since, from));
+        AlarmUtil.run(streamer, "Get Changes Since");
+    }
+
+    /**
+     * Records the cycle time and updates counts, called when the last alarm class of an
+     * execute cycle completes.
+     */
+    private void endExecuteCycle(long start) {
+        try {
+            executeCycleTimes.record(System.currentTimeMillis() - start);
+            setProperty(EXECUTE_CYCLE_TIME, new Value(executeCycleTimes.summary()));
+            updateCounts(false);
+            purgeEvents();
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        }
+    }
+
+    /**
+     * Action handler for getting the rolled up counts of a source path prefix, optionally
+     * followed by a stream of the counts that change.
+     */
+    private void getCountsByPath(final ActionResult event) {
+        String prefix = null;
+        Value value = event.getParameter(PREFIX);
+        if (value != null) {
+            prefix = value.getString();
+        }
+        prefix = AlarmPathCounts.normalize(prefix);
+        int depth = 1;
+        value = event.getParameter(DEPTH);
+        if ((value != null) && (value.getNumber() != null)) {
+            depth = Math.max(0, value.getNumber().intValue());
+        }
+        boolean updates = false;
+        value = event.getParameter(STREAM_UPDATES);
+        if ((value != null) && (value.getBool() != null)) {
+            updates = value.getBool();
+        }
+        AlarmPathCountStreamer streamer = new AlarmPathCountStreamer(
+                updates ? pathCountListeners : null, event, prefix, depth);
+        streamer.setInitialSet(pathCounts.get(prefix, depth));
+        AlarmUtil.run(streamer, "Get Counts By Path");
+    }
+
+    /**
+     * Action handler for getting the buckets of the execute cycle time histogram.
+     */
+    private void getExecuteHistogram(final ActionResult event) {
+        Table table = event.getTable();
+        AlarmHistogram histogram = executeCycleTimes;
+        for (int i = 0, len = histogram.getBucketCount(); i < len; i++) {
+            table.addRow(Row.make(new Value(histogram.getUpperBound(i)),
+                                  new Value(histogram.getCount(i))));
+        }
+    }
+
     /**
      * Action handler for getting the notes for a specific alarm record.
      */
@@ -967,7 +1576,9 @@ public class AlarmService extends AbstractAlarmObject {
     }
 
     /**
-     * Action handler for getting all open alarms followed by a stream of all upates.
+     * Action handler for getting all open alarms followed by a stream of all upates.  If a
+     * since sequence is provided and the change log still covers it, only the records that
+     * changed after it are sent rather than the entire open set.
      */
     private void getOpenAlarms(final ActionResult event) {
         boolean updates = true;
@@ -975,16 +1586,150 @@ public class AlarmService extends AbstractAlarmObject {
         if ((stream != null) && (stream.getBool() != null)) {
             updates = stream.getBool();
         }
-        final AlarmCursor cursor = Alarming.getProvider().queryOpenAlarms(null);
+        long since = 0;
+        Value value = event.getParameter(SINCE_SEQUENCE);
+        if ((value != null) && (value.getNumber() != null)) {
+            since = value.getNumber().longValue();
+        }
+        long snapshotSequence = getLastSequence();
+        AlarmCursor cursor = replayChanges(since, null);
+        if (cursor == null) {
+            cursor = Alarming.getProvider().queryOpenAlarms(null);
+        }
         AlarmStreamer streamer = null;
         if (updates) {
             streamer = new AlarmStreamer(openAlarmStreamListeners, event, cursor);
         } else {
             streamer = new AlarmStreamer(null, event, cursor);
         }
+        streamer.setSnapshotSequence(snapshotSequence);
         AlarmUtil.run(streamer, "Open Alarms");
     }
 
+    /**
+     * Action handler for getting the sources or watches that created the most alarms in
+     * a recent window.
+     */
+    private void getTopSources(final ActionResult event) {
+        String window = AlarmTopSources.HOUR;
+        Value value = event.getParameter(WINDOW);
+        if (value != null) {
+            window = value.getString();
+        }
+        boolean byWatch = false;
+        value = event.getParameter(GROUP_BY);
+        if (value != null) {
+            byWatch = WATCH_PATH.equals(value.getString());
+        }
+        int limit = 10;
+        value = event.getParameter(LIMIT);
+        if ((value != null) && (value.getNumber() != null)) {
+            limit = value.getNumber().intValue();
+        }
+        Table table = event.getTable();
+        for (Counter counter : topSources.get(window, byWatch, limit)) {
+            table.addRow(Row.make(new Value(counter.key),
+                                  new Value(counter.count),
+                                  new Value(counter.error)));
+        }
+    }
+
+    /**
+     * Updates the evaluation queue properties if they changed.
+     */
+    private void publishEvaluationMetrics() {
+        int pending = evaluationsPending.get();
+        if (getProperty(EVALUATIONS_PENDING).getNumber().intValue() != pending) {
+            setProperty(EVALUATIONS_PENDING, new Value(pending));
+        }
+        long coalesced = evaluationsCoalesced.get();
+        if (getProperty(EVALUATIONS_COALESCED).getNumber().longValue() != coalesced) {
+            setProperty(EVALUATIONS_COALESCED, new Value(coalesced));
+        }
+    }
+
+    /**
+     * Publishes the service counts tracked by the root of the path counts, without
+     * querying the provider.
+     */
+    private void publishPathCounts() {
+        try {
+            List<PathCount> list = pathCounts.get(null, 0);
+            if (list.isEmpty()) {
+                return;
+            }
+            PathCount root = list.get(0);
+            long sent = countUpdatesSent.get();
+            publishCount(this, IN_ALARM_COUNT, root.alarms);
+            publishCount(this, OPEN_ALARM_COUNT, root.open);
+            publishCount(this, UNACKED_ALARM_COUNT, root.unacked);
+            if (sent != countUpdatesSent.get()) {
+                setProperty(COUNT_UPDATES_SENT, new Value(countUpdatesSent.get()));
+                setProperty(COUNT_UPDATES_SUPPRESSED,
+                            new Value(countUpdatesSuppressed.get()));
+            }
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        }
+    }
+
+    /**
+     * Updates the subscription progress properties if they changed.
+     */
+    private void publishSubscriptionProgress() {
+        int value = subscriptions.getActive();
+        if (getProperty(SUBSCRIPTIONS).getNumber().intValue() != value) {
+            setProperty(SUBSCRIPTIONS, new Value(value));
+        }
+        value = subscriptions.getPending();
+        if (getProperty(SUBSCRIPTIONS_PENDING).getNumber().intValue() != value) {
+            setProperty(SUBSCRIPTIONS_PENDING, new Value(value));
+        }
+        value = subscriptions.getWatchCount();
+        if (getProperty(SUBSCRIBED_WATCHES).getNumber().intValue() != value) {
+            setProperty(SUBSCRIBED_WATCHES, new Value(value));
+        }
+        value = subscriptions.getStale();
+        if (getProperty(STALE_WATCHES).getNumber().intValue() != value) {
+            setProperty(STALE_WATCHES, new Value(value));
+        }
+    }
+
+    /**
+     * Hourly, deletes the events that don't belong to an alarm class (such as delete all)
+     * once they are older than the retention of every class.  Nothing is deleted if any
+     * class keeps its events forever.
+     */
+    private void purgeEvents() {
+        long now = System.currentTimeMillis();
+        if (lastEventPurge < 0) {
+            lastEventPurge = now;
+            return;
+        }
+        if (now < (lastEventPurge + TimeUtils.MILLIS_HOUR)) {
+            return;
+        }
+        lastEventPurge = now;
+        int days = 0;
+        AlarmObject child;
+        for (int i = 0, len = childCount(); i < len; i++) {
+            child = getChild(i);
+            if (child instanceof AlarmClass) {
+                int tmp = ((AlarmClass) child).getEventRetentionDays();
+                if (tmp <= 0) {
+                    return;
+                }
+                days = Math.max(days, tmp);
+            }
+        }
+        if (days > 0) {
+            Calendar cal = TimeUtils.reuseCalendar(now);
+            TimeUtils.addDays(-days, cal);
+            Alarming.getProvider().deleteEvents(null, cal);
+            TimeUtils.recycleCalendar(cal);
+        }
+    }
+
     private int nextHandle() {
         Value value = getConfig(NEXT_HANDLE);
         int handle = value.getNumber().intValue();
@@ -1056,7 +1801,7 @@ public class AlarmService extends AbstractAlarmObject {
             boolean update = false;
             for (UUID uuid : toDelete) {
                 AlarmUtil.logTrace("syncWatches delete: " + cursor.getUuid());
-                Alarming.getProvider().deleteRecord(uuid);
+                deleteRecord(uuid);
                 update = true;
             }
             //The following watches did not have an open alarm record
@@ -1074,6 +1819,23 @@ public class AlarmService extends AbstractAlarmObject {
         }
     }
 
+    /**
+     * Caches the lean watch properties, they are read on every cov.
+     */
+    private void updateLeanWatches() {
+        leanPublishInterval = (long) (getProperty(LEAN_PUBLISH_INTERVAL).getNumber()
+                                                                       .doubleValue() * 1000);
+        leanWatches = getProperty(LEAN_WATCHES).getBool();
+    }
+
+    /**
+     * Passes the subscribe rate properties to the subscription manager.
+     */
+    private void updateSubscribeRates() {
+        subscriptions.setRates(getProperty(SUBSCRIBE_RATE_START).getNumber().intValue(),
+                               getProperty(SUBSCRIBE_RATE_MAX).getNumber().intValue());
+    }
+
     /**
      * Used for updating various alarm counts in the service and child classes.
      */
@@ -37,6 +37,7 @@ class AlarmStreamer extends AlarmActionHandler implements AlarmConstants {
     private AlarmCursor initialSet;
     private Collection listenerContainer;
     private ActionResult request;
+    private long snapshotSequence;
     private Table table;
     private LinkedList<AlarmRecord> updates = new LinkedList<>();
 
@@ -125,6 +126,9 @@ class AlarmStreamer extends AlarmActionHandler implements AlarmConstants {
         StringBuilder buf = new StringBuilder();
         if (initialSet != null) {
             while (isValid() && initialSet.next()) {
+                if (initialSet.getSequence() <= 0) {
+                    initialSet.setSequence(snapshotSequence);
+                }
                 AlarmUtil.encodeAlarm(initialSet, table, cal, buf);
             }
         }
@@ -163,6 +167,14 @@ class AlarmStreamer extends AlarmActionHandler implements AlarmConstants {
         TimeUtils.recycleCalendar(cal);
     }
 
+    /**
+     * The sequence number to report for rows of the initial set that don't have one of
+     * their own, this should be the last sequence number when the set was queried.
+     */
+    public void setSnapshotSequence(long snapshotSequence) {
+        this.snapshotSequence = snapshotSequence;
+    }
+
     /**
      * Adds a record to the update queue.
      *
@@ -0,0 +1,33 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import org.dsa.iot.dslink.node.value.SubscriptionValue;
+import org.dsa.iot.dslink.util.handler.Handler;
+
+/**
+ * Something that receives values of a path through AlarmSubscriptions, such as a watch or
+ * one input of a composite watch.
+ *
+ * @author Aaron Hansen
+ */
+interface AlarmSubscriber extends Handler<SubscriptionValue> {
+
+    /**
+     * Called with one of the AlarmWatch.SUBSCRIPTION_ constants when the state of the
+     * subscription changes, such as when it is lost with the requester.
+     */
+    void setSubscriptionHealth(String health);
+
+    /**
+     * Called after the requester subscription of the path was issued.
+     */
+    void subscriptionIssued();
+
+}
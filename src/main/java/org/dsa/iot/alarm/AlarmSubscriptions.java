@@ -0,0 +1,387 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import org.dsa.iot.dslink.link.Requester;
+import org.dsa.iot.dslink.node.value.SubscriptionValue;
+import org.dsa.iot.dslink.util.handler.Handler;
+
+/**
+ * Multiplexes watch subscriptions by path and issues the requester subscriptions in
+ * batches, so that steadying tens of thousands of watches doesn't flood the broker.
+ * <p>
+ * There is at most one requester subscription per path and each value is fanned out to
+ * every watch (or other subscriber, such as a composite watch input) on the path.
+ * Watches are reference counted, the path is unsubscribed when the last one leaves.  A
+ * watch joining a path that is already subscribed is given the last value received.
+ * <p>
+ * Paths whose requester subscription needs to change are queued once.  When dequeued,
+ * the path is subscribed or unsubscribed depending on whether it has watches at that
+ * moment, so a subscribe that is cancelled before it was issued is simply dropped.
+ * <p>
+ * run() must be called every TICK_MILLIS.  Each call issues up to rate / ticks-per-second
+ * requests.  While there is a backlog, the rate doubles every second from the start rate
+ * up to the max rate, once the queue drains it falls back to the start rate.
+ * <p>
+ * When the requester disconnects, every issued path is queued again.  Watches waiting to
+ * be re-subscribed are counted as stale.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmSubscriptions implements Runnable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    static final long TICK_MILLIS = 100;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private int issued;
+    private long lastRamp;
+    private HashMap<String, PathSubscription> paths = new HashMap<>();
+    private ArrayDeque<PathSubscription> queue = new ArrayDeque<>();
+    private int rate;
+    private int rateMax = 2000;
+    private int rateStart = 200;
+    private AlarmService service;
+    private HashSet<AlarmSubscriber> stale = new HashSet<>();
+    private int watches;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    AlarmSubscriptions(AlarmService service) {
+        this.service = service;
+        this.rate = rateStart;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of requester subscriptions issued and not unsubscribed.
+     */
+    synchronized int getActive() {
+        return issued;
+    }
+
+    /**
+     * The number of queued paths.
+     */
+    synchronized int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * The number of watches whose subscription was lost and hasn't been re-issued.
+     */
+    synchronized int getStale() {
+        return stale.size();
+    }
+
+    /**
+     * The number of watches sharing the requester subscriptions.
+     */
+    synchronized int getWatchCount() {
+        return watches;
+    }
+
+    /**
+     * Issues one requester subscription.  Separate from run so that the requester can be
+     * stood in for, such as by the startup benchmark.
+     */
+    void issueSubscribe(Requester requester, String path, Handler<SubscriptionValue> handler) {
+        requester.subscribe(path, handler);
+    }
+
+    /**
+     * Issues one requester unsubscribe, see issueSubscribe.
+     */
+    void issueUnsubscribe(Requester requester, String path,
+                          Handler<SubscriptionValue> handler) {
+        requester.unsubscribe(path, handler, null);
+    }
+
+    /**
+     * Called when the requester disconnects.  Every issued subscription was lost with the
+     * connection, so the paths are queued again and will be re-issued at the throttled
+     * rate once the requester reconnects.  Paths that were waiting to be unsubscribed are
+     * dropped since there is nothing left to unsubscribe.
+     */
+    void requesterDisconnected() {
+        ArrayList<AlarmSubscriber> lost = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PathSubscription> it = paths.values().iterator();
+            PathSubscription sub;
+            while (it.hasNext()) {
+                sub = it.next();
+                if (!sub.issued) {
+                    continue;
+                }
+                sub.issued = false;
+                sub.last = null;
+                if (sub.watches.length == 0) {
+                    queue.remove(sub);
+                    it.remove();
+                    continue;
+                }
+                for (AlarmSubscriber watch : sub.watches) {
+                    stale.add(watch);
+                    lost.add(watch);
+                }
+                enqueue(sub);
+            }
+            issued = 0;
+            rate = rateStart;
+            lastRamp = 0;
+        }
+        AlarmUtil.logInfo("Requester disconnected, " + lost.size() +
+                                  " watches queued for resubscribe");
+        for (AlarmSubscriber watch : lost) {
+            watch.setSubscriptionHealth(AlarmWatch.SUBSCRIPTION_STALE);
+        }
+    }
+
+    /**
+     * Issues the next batch of requests.
+     */
+    public void run() {
+        Requester requester = service.getRequester();
+        if (requester == null) {
+            return;
+        }
+        ArrayList<PathSubscription> subscribes;
+        ArrayList<PathSubscription> unsubscribes = null;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                rate = rateStart;
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if ((now - lastRamp) >= 1000) {
+                if (lastRamp > 0) {
+                    rate = Math.min(rateMax, rate * 2);
+                }
+                lastRamp = now;
+            }
+            int max = Math.max(1, (int) (rate * TICK_MILLIS / 1000));
+            subscribes = new ArrayList<>(Math.min(max, queue.size()));
+            int count = 0;
+            PathSubscription sub;
+            while ((count < max) && ((sub = queue.poll()) != null)) {
+                sub.queued = false;
+                if (sub.watches.length > 0) {
+                    if (!sub.issued) {
+                        sub.issued = true;
+                        issued++;
+                        for (AlarmSubscriber watch : sub.watches) {
+                            stale.remove(watch);
+                        }
+                        subscribes.add(sub);
+                        count++;
+                    }
+                } else {
+                    paths.remove(sub.path);
+                    if (sub.issued) {
+                        sub.issued = false;
+                        sub.last = null;
+                        issued--;
+                        if (unsubscribes == null) {
+                            unsubscribes = new ArrayList<>();
+                        }
+                        unsubscribes.add(sub);
+                        count++;
+                    }
+                }
+            }
+            if (queue.isEmpty()) {
+                lastRamp = 0;
+            }
+        }
+        if (unsubscribes != null) {
+            for (PathSubscription sub : unsubscribes) {
+                try {
+                    issueUnsubscribe(requester, sub.path, sub);
+                } catch (Exception x) {
+                    AlarmUtil.logError(sub.path, x);
+                }
+            }
+        }
+        for (PathSubscription sub : subscribes) {
+            try {
+                issueSubscribe(requester, sub.path, sub);
+            } catch (Exception x) {
+                AlarmUtil.logError(sub.path, x);
+                //Queue it again so it is retried.
+                synchronized (this) {
+                    if (sub.issued) {
+                        sub.issued = false;
+                        issued--;
+                    }
+                    enqueue(sub);
+                }
+                continue;
+            }
+            for (AlarmSubscriber watch : sub.watches) {
+                watch.subscriptionIssued();
+            }
+        }
+    }
+
+    /**
+     * Sets the start and max request rates, in requests per second.
+     */
+    synchronized void setRates(int start, int max) {
+        rateStart = Math.max(1, start);
+        rateMax = Math.max(rateStart, max);
+        rate = Math.max(rateStart, Math.min(rate, rateMax));
+    }
+
+    /**
+     * Adds the watch to the path.  The requester subscription is queued if the path has
+     * not been issued, otherwise the watch is given the last value received.
+     */
+    void subscribe(AlarmSubscriber watch, String path) {
+        SubscriptionValue last;
+        synchronized (this) {
+            PathSubscription sub = paths.get(path);
+            if (sub == null) {
+                sub = new PathSubscription(path);
+                paths.put(path, sub);
+            }
+            if (sub.add(watch)) {
+                watches++;
+            }
+            if (!sub.issued) {
+                enqueue(sub);
+                return;
+            }
+            last = sub.last;
+        }
+        watch.subscriptionIssued();
+        if (last != null) {
+            watch.handle(last);
+        }
+    }
+
+    /**
+     * Removes the watch from the path.  When the last watch leaves, the requester
+     * subscription is queued for unsubscribe, or dropped if it was never issued.
+     */
+    synchronized void unsubscribe(AlarmSubscriber watch, String path) {
+        stale.remove(watch);
+        PathSubscription sub = paths.get(path);
+        if ((sub == null) || !sub.remove(watch)) {
+            return;
+        }
+        watches--;
+        if (sub.watches.length > 0) {
+            return;
+        }
+        if (sub.issued) {
+            enqueue(sub);
+        } else {
+            if (sub.queued) {
+                queue.remove(sub);
+                sub.queued = false;
+            }
+            paths.remove(path);
+        }
+    }
+
+    /**
+     * Queues the path if it isn't already, must be called while synchronized.
+     */
+    private void enqueue(PathSubscription sub) {
+        if (!sub.queued) {
+            sub.queued = true;
+            queue.add(sub);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The requester subscription of one path and the watches sharing it.  The watch array
+     * is replaced rather than modified, so values are fanned out without locking.
+     */
+    private static class PathSubscription implements Handler<SubscriptionValue> {
+
+        boolean issued;
+        volatile SubscriptionValue last;
+        String path;
+        boolean queued;
+        volatile AlarmSubscriber[] watches = new AlarmSubscriber[0];
+
+        PathSubscription(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns false if the watch was already present.
+         */
+        boolean add(AlarmSubscriber watch) {
+            AlarmSubscriber[] tmp = watches;
+            for (AlarmSubscriber w : tmp) {
+                if (w == watch) {
+                    return false;
+                }
+            }
+            AlarmSubscriber[] arr = new AlarmSubscriber[tmp.length + 1];
+            System.arraycopy(tmp, 0, arr, 0, tmp.length);
+            arr[tmp.length] = watch;
+            watches = arr;
+            return true;
+        }
+
+        @Override
+        public void handle(SubscriptionValue value) {
+            last = value;
+            for (AlarmSubscriber watch : watches) {
+                try {
+                    watch.handle(value);
+                } catch (Exception x) {
+                    AlarmUtil.logError(path, x);
+                }
+            }
+        }
+
+        /**
+         * Returns false if the watch wasn't present.
+         */
+        boolean remove(AlarmSubscriber watch) {
+            AlarmSubscriber[] tmp = watches;
+            for (int i = 0; i < tmp.length; i++) {
+                if (tmp[i] == watch) {
+                    AlarmSubscriber[] arr = new AlarmSubscriber[tmp.length - 1];
+                    System.arraycopy(tmp, 0, arr, 0, i);
+                    System.arraycopy(tmp, i + 1, arr, i, arr.length - i);
+                    watches = arr;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,297 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Approximate counts of the noisiest alarm sources over sliding windows, using the
+ * Space-Saving algorithm.  Each window is divided into fixed time slices that each hold a
+ * bounded summary, expired slices are reused.  A query merges the live slices of one
+ * window, so memory and query cost depend only on the capacity and slice count, never on
+ * the number of alarms.
+ * <p>
+ * Counts are upper bounds, the error column is how much of the count may be
+ * overestimated.  A key missing from a full slice could have been evicted from it, so the
+ * merge charges it that slice's minimum count, as both count and error.
+ *
+ * @author Aaron Hansen
+ */
+class AlarmTopSources {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    static final String HOUR = "1h";
+    static final String DAY = "24h";
+    static final String WEEK = "7d";
+
+    private static final int CAPACITY = 100; //keys per slice
+    private static final long MINUTE = 60 * 1000;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Window[] sources = newWindows();
+    private Window[] watches = newWindows();
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Forgets everything.
+     */
+    synchronized void clear() {
+        sources = newWindows();
+        watches = newWindows();
+    }
+
+    /**
+     * Returns the top keys of the window in descending count order.
+     *
+     * @param window  HOUR, DAY or WEEK.
+     * @param byWatch True for watch paths, false for source paths.
+     * @param limit   Maximum number of results.
+     */
+    synchronized List<Counter> get(String window, boolean byWatch, int limit) {
+        Window[] windows = byWatch ? watches : sources;
+        Window win = windows[0];
+        if (DAY.equals(window)) {
+            win = windows[1];
+        } else if (WEEK.equals(window)) {
+            win = windows[2];
+        }
+        return win.get(System.currentTimeMillis(), limit);
+    }
+
+    /**
+     * Counts a new alarm.
+     *
+     * @param sourcePath Can be null.
+     * @param watchPath  Null if the alarm was not created by a watch.
+     */
+    synchronized void record(String sourcePath, String watchPath) {
+        long now = System.currentTimeMillis();
+        if (sourcePath != null) {
+            for (Window win : sources) {
+                win.offer(sourcePath, now);
+            }
+        }
+        if (watchPath != null) {
+            for (Window win : watches) {
+                win.offer(watchPath, now);
+            }
+        }
+    }
+
+    private static Window[] newWindows() {
+        return new Window[]{
+                new Window(5 * MINUTE, 12),
+                new Window(60 * MINUTE, 24),
+                new Window(360 * MINUTE, 28)
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A key and its approximate count.
+     */
+    static class Counter {
+
+        long count;
+        long error;
+        private int index; //heap position
+        String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * A bounded Space-Saving summary.  Counters are kept in a min heap so the smallest can
+     * be replaced when a new key arrives and the summary is full.
+     */
+    private static class Summary {
+
+        private Counter[] heap = new Counter[CAPACITY];
+        private HashMap<String, Counter> map = new HashMap<>();
+        private int size;
+
+        /**
+         * If this summary is full, adds its minimum count to the count and error of every
+         * total it isn't tracking, since each could have been evicted with up to that many.
+         */
+        void addMissing(HashMap<String, Counter> totals) {
+            if (size < heap.length) {
+                return;
+            }
+            long min = heap[0].count;
+            for (Counter total : totals.values()) {
+                if (!map.containsKey(total.key)) {
+                    total.count += min;
+                    total.error += min;
+                }
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                heap[i] = null;
+            }
+            map.clear();
+            size = 0;
+        }
+
+        /**
+         * Adds the counters of this summary to the totals.
+         */
+        void mergeInto(HashMap<String, Counter> totals) {
+            Counter counter, total;
+            for (int i = 0; i < size; i++) {
+                counter = heap[i];
+                total = totals.get(counter.key);
+                if (total == null) {
+                    total = new Counter(counter.key);
+                    totals.put(counter.key, total);
+                }
+                total.count += counter.count;
+                total.error += counter.error;
+            }
+        }
+
+        void offer(String key) {
+            Counter counter = map.get(key);
+            if (counter != null) {
+                counter.count++;
+            } else if (size < heap.length) {
+                counter = new Counter(key);
+                counter.count = 1;
+                heap[size] = counter;
+                map.put(key, counter);
+                siftUp(size++);
+                return;
+            } else {
+                //Evict the minimum, the new key inherits its count as error.
+                counter = heap[0];
+                map.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.count;
+                counter.count++;
+                map.put(key, counter);
+            }
+            siftDown(counter.index);
+        }
+
+        private void siftDown(int idx) {
+            Counter counter = heap[idx];
+            int child;
+            while ((child = (idx << 1) + 1) < size) {
+                if (((child + 1) < size) && (heap[child + 1].count < heap[child].count)) {
+                    child++;
+                }
+                if (counter.count <= heap[child].count) {
+                    break;
+                }
+                heap[idx] = heap[child];
+                heap[idx].index = idx;
+                idx = child;
+            }
+            heap[idx] = counter;
+            counter.index = idx;
+        }
+
+        private void siftUp(int idx) {
+            Counter counter = heap[idx];
+            int parent;
+            while (idx > 0) {
+                parent = (idx - 1) >> 1;
+                if (heap[parent].count <= counter.count) {
+                    break;
+                }
+                heap[idx] = heap[parent];
+                heap[idx].index = idx;
+                idx = parent;
+            }
+            heap[idx] = counter;
+            counter.index = idx;
+        }
+
+    }
+
+    /**
+     * A ring of time slices covering one window.
+     */
+    private static class Window {
+
+        private long sliceMillis;
+        private long[] sliceIds;
+        private Summary[] slices;
+
+        Window(long sliceMillis, int count) {
+            this.sliceMillis = sliceMillis;
+            this.sliceIds = new long[count];
+            this.slices = new Summary[count];
+            for (int i = 0; i < count; i++) {
+                sliceIds[i] = -1;
+                slices[i] = new Summary();
+            }
+        }
+
+        List<Counter> get(long now, int limit) {
+            long current = now / sliceMillis;
+            long oldest = current - slices.length;
+            HashMap<String, Counter> totals = new HashMap<>();
+            for (int i = 0; i < slices.length; i++) {
+                if (sliceIds[i] > oldest) {
+                    slices[i].mergeInto(totals);
+                }
+            }
+            for (int i = 0; i < slices.length; i++) {
+                if (sliceIds[i] > oldest) {
+                    slices[i].addMissing(totals);
+                }
+            }
+            ArrayList<Counter> list = new ArrayList<>(totals.values());
+            Collections.sort(list, new Comparator<Counter>() {
+                @Override
+                public int compare(Counter c1, Counter c2) {
+                    return Long.compare(c2.count, c1.count);
+                }
+            });
+            if (list.size() > limit) {
+                return new ArrayList<>(list.subList(0, Math.max(0, limit)));
+            }
+            return list;
+        }
+
+        void offer(String key, long now) {
+            long id = now / sliceMillis;
+            int idx = (int) (id % slices.length);
+            if (sliceIds[idx] != id) {
+                slices[idx].clear();
+                sliceIds[idx] = id;
+            }
+            slices[idx].offer(key);
+        }
+
+    }
+
+}
@@ -70,6 +70,7 @@ public class AlarmUtil implements AlarmConstants {
         String createdTime = null;
         String normalTime = null;
         String ackTime = null;
+        String lastOccurrence = null;
         boolean recycleCal = false;
         if (cacheCal == null) {
             cacheCal = getCalendar(record.getCreatedTime());
@@ -89,6 +90,13 @@ public class AlarmUtil implements AlarmConstants {
             cacheCal.setTimeInMillis(record.getAckTime());
             ackTime = TimeUtils.encode(cacheCal, true, cacheBuf).toString();
         }
+        if (record.getLastOccurrence() != record.getCreatedTime()) {
+            cacheBuf.setLength(0);
+            cacheCal.setTimeInMillis(record.getLastOccurrence());
+            lastOccurrence = TimeUtils.encode(cacheCal, true, cacheBuf).toString();
+        } else {
+            lastOccurrence = createdTime;
+        }
         //Alarm classes can be deleted.
         String alarmClassName = "";
         AlarmClass alarmClass = record.getAlarmClass();
@@ -112,7 +120,10 @@ public class AlarmUtil implements AlarmConstants {
                               new Value(record.hasNotes()),
                               new Value(watchPath),
                               new Value(record.isNormal()),
-                              new Value(record.isAcknowledged())));
+                              new Value(record.isAcknowledged()),
+                              new Value(record.getSequence()),
+                              new Value(record.getOccurrences()),
+                              new Value(lastOccurrence)));
         if (recycleCal) {
             recycle(cacheCal);
         }
@@ -135,6 +146,62 @@ public class AlarmUtil implements AlarmConstants {
         action.addResult(new Parameter(toColumnName(WATCH_PATH), ValueType.STRING));
         action.addResult(new Parameter(toColumnName(IS_NORMAL), ValueType.STRING));
         action.addResult(new Parameter(toColumnName(IS_ACKNOWLEDGED), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(SEQUENCE), ValueType.NUMBER));
+        action.addResult(new Parameter(toColumnName(OCCURRENCES), ValueType.NUMBER));
+        action.addResult(new Parameter(toColumnName(LAST_OCCURRENCE), ValueType.STRING));
+    }
+
+    /**
+     * Encodes the columns for an action that returns a table/stream of alarm events.
+     *
+     * @param event    The event to encode.
+     * @param table    Where to encode the event.
+     * @param cacheCal Optional but efficient if encoding many rows at once.
+     * @param cacheBuf Optional but efficient if encoding many rows at once.
+     */
+    public static void encodeEvent(AlarmEvent event, Table table, Calendar cacheCal,
+                                   StringBuilder cacheBuf) {
+        if (cacheBuf == null) {
+            cacheBuf = new StringBuilder();
+        }
+        boolean recycleCal = false;
+        if (cacheCal == null) {
+            cacheCal = getCalendar(event.getTimestamp());
+            recycleCal = true;
+        } else {
+            cacheCal.setTimeInMillis(event.getTimestamp());
+        }
+        cacheBuf.setLength(0);
+        String timestamp = TimeUtils.encode(cacheCal, true, cacheBuf).toString();
+        String uuid = null;
+        if (event.getUuid() != null) {
+            uuid = event.getUuid().toString();
+        }
+        table.addRow(Row.make(new Value(event.getSequence()),
+                              new Value(timestamp),
+                              new Value(event.getType()),
+                              new Value(uuid),
+                              new Value(event.getSourcePath()),
+                              new Value(event.getAlarmClass()),
+                              new Value(event.getUser()),
+                              new Value(event.getDetail())));
+        if (recycleCal) {
+            recycle(cacheCal);
+        }
+    }
+
+    /**
+     * Encodes the columns for an action that returns a table of alarm events.
+     */
+    public static void encodeEventColumns(Action action) {
+        action.addResult(new Parameter(toColumnName(SEQUENCE), ValueType.NUMBER));
+        action.addResult(new Parameter(toColumnName(TIMESTAMP), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(EVENT), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(UUID_STR), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(SOURCE_PATH), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(ALARM_CLASS), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(USER), ValueType.STRING));
+        action.addResult(new Parameter(toColumnName(DETAIL), ValueType.STRING));
     }
 
     /**
@@ -250,6 +317,35 @@ public class AlarmUtil implements AlarmConstants {
         throw new RuntimeException(error);
     }
 
+    /**
+     * Try to extract a numeric from the value, even if it's another type.  Booleans are
+     * 1 and 0.
+     *
+     * @return Double.NaN if the value is null or a double can't be extracted.
+     */
+    public static double toNumeric(Value value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        Number num = value.getNumber();
+        if (num != null) {
+            return num.doubleValue();
+        }
+        Boolean bool = value.getBool();
+        if (bool != null) {
+            return bool ? 1 : 0;
+        }
+        String str = value.getString();
+        if (str != null) {
+            try {
+                return Double.parseDouble(str);
+            } catch (Exception x) {
+                logError(str, x);
+            }
+        }
+        return Double.NaN;
+    }
+
     /**
      * Looks for the JAVA_TYPE config and if found, instantiates an instance and calls
      * init for the given node thus, loading the entire subtree of AlarmObjects.
@@ -11,13 +11,20 @@ package org.dsa.iot.alarm;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.dsa.iot.dslink.DSLink;
 import org.dsa.iot.dslink.link.Requester;
 import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.Permission;
 import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.actions.Action;
+import org.dsa.iot.dslink.node.actions.ActionResult;
+import org.dsa.iot.dslink.node.actions.Parameter;
 import org.dsa.iot.dslink.node.value.SubscriptionValue;
 import org.dsa.iot.dslink.node.value.Value;
 import org.dsa.iot.dslink.node.value.ValuePair;
+import org.dsa.iot.dslink.node.value.ValueType;
 import org.dsa.iot.dslink.util.TimeUtils;
 import org.dsa.iot.dslink.util.handler.Handler;
 
@@ -29,16 +36,27 @@ import org.dsa.iot.dslink.util.handler.Handler;
  * @author Aaron Hansen
  */
 public class AlarmWatch extends AbstractAlarmObject
-        implements Runnable, Handler<SubscriptionValue> {
+        implements Runnable, AlarmSubscriber {
 
     ///////////////////////////////////////////////////////////////////////////
     // Constants
     ///////////////////////////////////////////////////////////////////////////
 
     private static final String ALARM_STATE_TIME = "Alarm State Time";
+    private static final String CHATTERING = "Chattering";
+    private static final String CHATTER_COUNT = "Chatter Count";
     protected static final String CURRENT_VALUE = "Current Value";
+    static final String HOURS = "Hours";
     private static final String LAST_ALARM_RECORD = "Last Alarm Record";
     private static final String LAST_COV = "Last COV";
+    private static final String SHELVED_UNTIL = "Shelved Until";
+    private static final String SUBSCRIPTION = "Subscription";
+    static final String SUBSCRIPTION_NONE = "None";
+    static final String SUBSCRIPTION_PENDING = "Pending";
+    static final String SUBSCRIPTION_RECEIVING = "Receiving";
+    static final String SUBSCRIPTION_STALE = "Stale";
+    static final String SUBSCRIPTION_SUBSCRIBED = "Subscribed";
+    private static final String TRANSITION_COUNT = "Transition Count";
 
     ///////////////////////////////////////////////////////////////////////////
     // Fields
@@ -46,10 +64,35 @@ public class AlarmWatch extends AbstractAlarmObject
 
     private Boolean alarmDetected = null;
     private long alarmDetectedTime = System.currentTimeMillis();
-    private long lastCov = alarmDetectedTime;
+    private int chatterCount = 0;
+    private boolean chattering = false;
+    private volatile Value currentValue;
+    private AtomicBoolean evaluationPending = new AtomicBoolean(false);
+    private TimingWheel.Timeout inhibitTimeout;
+    private volatile long lastCov = alarmDetectedTime;
+    private long lastPublishedTransitions = -1;
     private long lastStateTime = alarmDetectedTime;
     private AlarmAlgorithm parentAlgorithm;
+    private AtomicInteger propertySubscribers = new AtomicInteger();
+    private AtomicBoolean publishScheduled = new AtomicBoolean(false);
+    private Runnable publishTask = new Runnable() {
+        @Override
+        public void run() {
+            //Clear first so covs during the publish schedule another.
+            publishScheduled.set(false);
+            publishProperties();
+        }
+    };
+    private TimingWheel.Timeout quietTimeout;
+    private long shelvedUntil = 0;
+    private TimingWheel.Timeout shelveTimeout;
+    private TimingWheel.Timeout staleTimeout;
     private String subscribedPath;
+    private volatile String subscriptionHealth = SUBSCRIPTION_NONE;
+    private volatile long transitionCount = 0;
+    private int transitionHead = 0;
+    private int transitionSize = 0;
+    private long[] transitions; //ring of recent transition times
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
@@ -63,6 +106,10 @@ public class AlarmWatch extends AbstractAlarmObject
      * The current value of the watch, or null if that doesn't make sense.
      */
     public Value getCurrentValue() {
+        Value value = currentValue;
+        if (value != null) {
+            return value;
+        }
         return getProperty(CURRENT_VALUE);
     }
 
@@ -90,36 +137,45 @@ public class AlarmWatch extends AbstractAlarmObject
 
     /**
      * Called when the target changes.  Sets up some internal state
-     * then calls AlarmAlgorithm.update(this) asynchronously.
+     * then calls AlarmAlgorithm.update(this) asynchronously.  In lean mode the value
+     * properties are only written when a client is subscribed to them, or at the lean
+     * publish interval.
      */
     public void handle(SubscriptionValue subValue) {
         try {
+            if (subscriptionHealth != SUBSCRIPTION_RECEIVING) {
+                setSubscriptionHealth(SUBSCRIPTION_RECEIVING);
+            }
+            AlarmService service = getService();
+            if (service.isLeanWatches()) {
+                Value value = subValue.getValue();
+                if (value != null) {
+                    currentValue = value;
+                }
+                lastCov = System.currentTimeMillis();
+                if (propertySubscribers.get() > 0) {
+                    publishProperties();
+                } else {
+                    schedulePublish(service.getLeanPublishInterval());
+                }
+                if (isValid()) {
+                    scheduleEvaluation();
+                }
+                return;
+            }
             if (subValue.getValue().equals(getNode().getValue())) {
                 if (isValid()) {
-                    AlarmUtil.enqueue(this);
+                    scheduleEvaluation();
                 }
                 return;
             }
             lastCov = System.currentTimeMillis();
-            Calendar cal = AlarmUtil.getCalendar(lastCov);
-            setProperty(LAST_COV,
-                        new Value(TimeUtils.encode(cal, true, null).toString()));
-            AlarmUtil.recycle(cal);
-            Value value = subValue.getValue();
-            if (value != null) {
-                Value curVal = getCurrentValue();
-                if (curVal == null) {
-                    initProperty(CURRENT_VALUE, value).setWritable(Writable.NEVER);
-                } else {
-                    if (curVal.getType() != subValue.getValue().getType()) {
-                        Node child = getNode().getChild(CURRENT_VALUE, false);
-                        child.setValueType(subValue.getValue().getType());
-                    }
-                    setProperty(CURRENT_VALUE, value);
-                }
+            if (subValue.getValue() != null) {
+                currentValue = subValue.getValue();
             }
+            publishProperties();
             if (isValid()) {
-                AlarmUtil.enqueue(this);
+                scheduleEvaluation();
             }
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
@@ -127,24 +183,27 @@ public class AlarmWatch extends AbstractAlarmObject
     }
 
     /**
-     * Used to call AlarmAlgorithm.update asynchronously.
+     * Used to call AlarmAlgorithm.update asynchronously.  The pending flag is cleared
+     * first, so a cov arriving during the update schedules another.
      */
     @Override
     public void run() {
+        if (evaluationPending.compareAndSet(true, false)) {
+            getService().evaluationStarted();
+        }
         getAlgorithm().update(this);
     }
 
     /**
-     * Subscribes to the path.
+     * Queues the subscription to the path and schedules the end of any persisted shelve.
      */
     @Override
     protected void doSteady() {
-        AlarmUtil.enqueue(new Runnable() {
-            @Override
-            public void run() {
-                subscribePath();
-            }
-        }, 500);
+        listenForSubscribers(LAST_COV);
+        listenForSubscribers(CURRENT_VALUE);
+        listenForSubscribers(TRANSITION_COUNT);
+        restoreShelve();
+        subscribePath();
         super.doSteady();
     }
 
@@ -153,6 +212,10 @@ public class AlarmWatch extends AbstractAlarmObject
      */
     @Override
     protected void doStop() {
+        cancelInhibitTimeout();
+        cancelQuietTimeout();
+        cancelShelveTimeout();
+        cancelStaleTimeout();
         unsubscribePath();
         parentAlgorithm = null;
     }
@@ -241,6 +304,26 @@ public class AlarmWatch extends AbstractAlarmObject
      */
     @Override
     protected void initActions() {
+        Node node = getNode();
+        //Shelve
+        Action action = new Action(Permission.WRITE, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                shelve(event);
+            }
+        });
+        action.addParameter(new Parameter(HOURS, ValueType.NUMBER, new Value(8)));
+        action.addParameter(new Parameter(USER, ValueType.STRING, new Value("")));
+        node.createChild("Shelve", false).setSerializable(false).setAction(action).build();
+        //Unshelve
+        action = new Action(Permission.WRITE, new Handler<ActionResult>() {
+            @Override
+            public void handle(ActionResult event) {
+                unshelve(event);
+            }
+        });
+        action.addParameter(new Parameter(USER, ValueType.STRING, new Value("")));
+        node.createChild("Unshelve", false).setSerializable(false).setAction(action).build();
         addDeleteAction("Delete Watch");
     }
 
@@ -266,6 +349,19 @@ public class AlarmWatch extends AbstractAlarmObject
         lastStateTime = cal.getTimeInMillis();
         initProperty(LAST_ALARM_RECORD, new Value("")).setWritable(Writable.NEVER);
         initProperty(LAST_COV, new Value("null")).setWritable(Writable.NEVER);
+        initProperty(SHELVED_UNTIL, new Value("")).setWritable(Writable.NEVER);
+        initProperty(SUBSCRIPTION, new Value(SUBSCRIPTION_NONE)).createFakeBuilder()
+                                                                .setSerializable(false)
+                                                                .setWritable(Writable.NEVER);
+        initProperty(CHATTERING, new Value(false)).createFakeBuilder()
+                                                  .setSerializable(false)
+                                                  .setWritable(Writable.NEVER);
+        initProperty(CHATTER_COUNT, new Value(0)).createFakeBuilder()
+                                                 .setSerializable(false)
+                                                 .setWritable(Writable.NEVER);
+        initProperty(TRANSITION_COUNT, new Value(0)).createFakeBuilder()
+                                                    .setSerializable(false)
+                                                    .setWritable(Writable.NEVER);
     }
 
     @Override
@@ -300,10 +396,10 @@ public class AlarmWatch extends AbstractAlarmObject
     }
 
     /**
-     * Sets the corresponding property.
+     * Sets the corresponding property, null clears it.
      */
     protected void setLastAlarmUuid(UUID uuid) {
-        setProperty(LAST_ALARM_RECORD, new Value(uuid.toString()));
+        setProperty(LAST_ALARM_RECORD, new Value(uuid == null ? "" : uuid.toString()));
     }
 
     /**
@@ -320,15 +416,55 @@ public class AlarmWatch extends AbstractAlarmObject
     protected void unsubscribePath() {
         try {
             if ((subscribedPath != null) && !subscribedPath.isEmpty()) {
-                getService().getRequester().unsubscribe(
-                        subscribedPath, this, null);
+                getService().getSubscriptions().unsubscribe(this, subscribedPath);
                 subscribedPath = null;
+                setSubscriptionHealth(SUBSCRIPTION_NONE);
             }
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
         }
     }
 
+    /**
+     * Cancels the pending inhibit re-evaluation, if any.
+     */
+    synchronized void cancelInhibitTimeout() {
+        if (inhibitTimeout != null) {
+            inhibitTimeout.cancel();
+            inhibitTimeout = null;
+        }
+    }
+
+    /**
+     * Cancels the pending end of chattering, if any.
+     */
+    synchronized void cancelQuietTimeout() {
+        if (quietTimeout != null) {
+            quietTimeout.cancel();
+            quietTimeout = null;
+        }
+    }
+
+    /**
+     * Cancels the pending end of shelving, if any.
+     */
+    synchronized void cancelShelveTimeout() {
+        if (shelveTimeout != null) {
+            shelveTimeout.cancel();
+            shelveTimeout = null;
+        }
+    }
+
+    /**
+     * Cancels the pending stale deadline, if any.
+     */
+    synchronized void cancelStaleTimeout() {
+        if (staleTimeout != null) {
+            staleTimeout.cancel();
+            staleTimeout = null;
+        }
+    }
+
     /**
      * How long in millis since the change of state was first detected.
      */
@@ -336,6 +472,62 @@ public class AlarmWatch extends AbstractAlarmObject
         return System.currentTimeMillis() - alarmDetectedTime;
     }
 
+    /**
+     * True while the watch is holding its record open because of chattering.
+     */
+    synchronized boolean isChattering() {
+        return chattering;
+    }
+
+    /**
+     * True if records should not be created for the watch.  The watch continues to
+     * track its alarm state.
+     */
+    synchronized boolean isShelved() {
+        return shelvedUntil > 0;
+    }
+
+    /**
+     * Adds a state transition to the sliding window.  The transition count property is
+     * published the same way as the value properties: in lean mode only to subscribed
+     * clients or at the lean publish interval.
+     *
+     * @param window    Millis a transition stays in the window.
+     * @param threshold Max transitions allowed in the window.
+     * @return True if there are more than threshold transitions in the window.
+     */
+    boolean recordTransition(long window, int threshold) {
+        boolean ret;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if ((transitions == null) || (transitions.length != (threshold + 1))) {
+                transitions = new long[threshold + 1];
+                transitionHead = 0;
+                transitionSize = 0;
+            }
+            long oldest = now - window;
+            while ((transitionSize > 0) && (transitions[transitionHead] <= oldest)) {
+                transitionHead = (transitionHead + 1) % transitions.length;
+                transitionSize--;
+            }
+            if (transitionSize == transitions.length) {
+                transitionHead = (transitionHead + 1) % transitions.length;
+                transitionSize--;
+            }
+            transitions[(transitionHead + transitionSize) % transitions.length] = now;
+            transitionSize++;
+            transitionCount++;
+            ret = transitionSize > threshold;
+        }
+        AlarmService service = getService();
+        if (!service.isLeanWatches() || (propertySubscribers.get() > 0)) {
+            publishTransitionCount();
+        } else {
+            schedulePublish(service.getLeanPublishInterval());
+        }
+        return ret;
+    }
+
     /**
      * Called by the algorithm each time it evaluates the alarm condition.  This tracks
      * state changes for inhibit purposes.
@@ -357,6 +549,313 @@ public class AlarmWatch extends AbstractAlarmObject
         this.alarmDetectedTime = System.currentTimeMillis();
     }
 
+    /**
+     * Runs the task once the watch has been stable for the given delay, replacing any
+     * pending task.
+     */
+    synchronized void scheduleQuietTimeout(Runnable task, long delay) {
+        if (quietTimeout != null) {
+            quietTimeout.cancel();
+        }
+        quietTimeout = getService().getTimingWheel().schedule(task, delay);
+    }
+
+    /**
+     * Re-evaluates the watch after the given delay, unless a stale deadline is already
+     * pending.  Only the lock of this watch is held to check.
+     */
+    synchronized void scheduleStaleTimeout(long delay) {
+        if (staleTimeout != null) {
+            return;
+        }
+        staleTimeout = getService().getTimingWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AlarmWatch.this) {
+                    staleTimeout = null;
+                }
+                scheduleEvaluation();
+            }
+        }, delay);
+    }
+
+    /**
+     * Stops the watch from creating records for the given duration.  Shelving an already
+     * shelved watch replaces the expiry.
+     *
+     * @param duration Millis.
+     * @param user     Recorded in the event, may be null.
+     */
+    void shelve(long duration, String user) {
+        long until = System.currentTimeMillis() + duration;
+        synchronized (this) {
+            shelvedUntil = until;
+            scheduleShelveTimeout(duration);
+        }
+        Calendar cal = AlarmUtil.getCalendar(until);
+        String str = TimeUtils.encode(cal, true, null).toString();
+        AlarmUtil.recycle(cal);
+        setProperty(SHELVED_UNTIL, new Value(str));
+        AlarmUtil.logInfo(getNode().getPath() + " shelved until " + str);
+        addShelveEvent(AlarmEvent.SHELVE, user, str);
+    }
+
+    /**
+     * Ends shelving.  If the watch is in alarm without an open record, one is created on
+     * the evaluation lane so it can't race an evaluation of the watch.
+     *
+     * @param user Recorded in the event, may be null.
+     */
+    void unshelve(String user) {
+        synchronized (this) {
+            if (shelvedUntil <= 0) {
+                return;
+            }
+            shelvedUntil = 0;
+            cancelShelveTimeout();
+        }
+        setProperty(SHELVED_UNTIL, new Value(""));
+        AlarmUtil.logInfo(getNode().getPath() + " unshelved");
+        addShelveEvent(AlarmEvent.UNSHELVE, user, null);
+        final AlarmAlgorithm algorithm = getAlgorithm();
+        if (algorithm != null) {
+            getService().executeOnLane(this, new Runnable() {
+                @Override
+                public void run() {
+                    algorithm.annunciate(AlarmWatch.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Updates the chattering property, and the chatter count when chattering starts.
+     */
+    void setChattering(boolean arg) {
+        synchronized (this) {
+            if (chattering == arg) {
+                return;
+            }
+            chattering = arg;
+            if (arg) {
+                chatterCount++;
+            }
+        }
+        setProperty(CHATTERING, new Value(arg));
+        if (arg) {
+            setProperty(CHATTER_COUNT, new Value(chatterCount));
+        }
+    }
+
+    /**
+     * Called by the subscription manager after the subscribe was issued.  A value may
+     * already have arrived, so this only advances pending or stale watches.
+     */
+    public void subscriptionIssued() {
+        String health = subscriptionHealth;
+        if ((health == SUBSCRIPTION_PENDING) || (health == SUBSCRIPTION_STALE)) {
+            setSubscriptionHealth(SUBSCRIPTION_SUBSCRIBED);
+        }
+    }
+
+    /**
+     * Updates the subscription property if the health changed.  One of the SUBSCRIPTION_
+     * constants: none, pending (queued), subscribed (issued, no value yet), receiving or
+     * stale (lost with the requester, waiting to be re-issued).
+     */
+    public void setSubscriptionHealth(String health) {
+        if (subscriptionHealth == health) {
+            return;
+        }
+        subscriptionHealth = health;
+        setProperty(SUBSCRIPTION, new Value(health));
+    }
+
+    /**
+     * Queues an evaluation by the algorithm on the lane of this watch, unless one is
+     * already pending.  The pending evaluation reads the state of the watch when it runs,
+     * so it always sees the latest value.
+     */
+    void scheduleEvaluation() {
+        AlarmService service = getService();
+        if (evaluationPending.compareAndSet(false, true)) {
+            service.evaluationQueued(false);
+            if (!service.evaluate(this)) {
+                //Not running, the next cov or auto update will try again.
+                evaluationPending.set(false);
+                service.evaluationStarted();
+            }
+        } else {
+            service.evaluationQueued(true);
+        }
+    }
+
+    /**
+     * Re-evaluates the watch when the given inhibit time expires, replacing any pending
+     * re-evaluation.
+     */
+    synchronized void scheduleInhibitTimeout(long delay) {
+        if (inhibitTimeout != null) {
+            inhibitTimeout.cancel();
+        }
+        inhibitTimeout = getService().getTimingWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                scheduleEvaluation();
+            }
+        }, delay);
+    }
+
+    /**
+     * Records a shelve or unshelve event.
+     */
+    private void addShelveEvent(String type, String user, String detail) {
+        try {
+            AlarmEvent event = new AlarmEvent(type)
+                    .setSourcePath(getSourcePath())
+                    .setUser(user)
+                    .setDetail(detail);
+            AlarmAlgorithm algorithm = getAlgorithm();
+            if (algorithm != null) {
+                event.setAlarmClass(algorithm.getAlarmClass().getNode().getName());
+            }
+            Alarming.getProvider().addEvent(event);
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        }
+    }
+
+    /**
+     * Tracks clients subscribed to the property, so lean mode can publish to them
+     * immediately.  Does nothing if the property doesn't exist yet.
+     */
+    private void listenForSubscribers(String property) {
+        Node child = getNode().getChild(property, false);
+        if (child == null) {
+            return;
+        }
+        child.getListener().setOnSubscribeHandler(new Handler<Node>() {
+            @Override
+            public void handle(Node event) {
+                propertySubscribers.incrementAndGet();
+                if (getService().isLeanWatches()) {
+                    AlarmUtil.enqueue(publishTask);
+                }
+            }
+        });
+        child.getListener().setOnUnsubscribeHandler(new Handler<Node>() {
+            @Override
+            public void handle(Node event) {
+                if (propertySubscribers.decrementAndGet() < 0) {
+                    propertySubscribers.set(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the in memory cov time, current value and transition count to their
+     * properties.
+     */
+    private void publishProperties() {
+        publishTransitionCount();
+        Calendar cal = AlarmUtil.getCalendar(lastCov);
+        setProperty(LAST_COV, new Value(TimeUtils.encode(cal, true, null).toString()));
+        AlarmUtil.recycle(cal);
+        Value value = currentValue;
+        if (value == null) {
+            return;
+        }
+        Node child = getNode().getChild(CURRENT_VALUE, false);
+        if (child == null) {
+            initProperty(CURRENT_VALUE, value).setWritable(Writable.NEVER);
+            listenForSubscribers(CURRENT_VALUE);
+            return;
+        }
+        if (child.getValueType() != value.getType()) {
+            child.setValueType(value.getType());
+        }
+        setProperty(CURRENT_VALUE, value);
+    }
+
+    /**
+     * Writes the in memory transition count to its property, if it changed.
+     */
+    private void publishTransitionCount() {
+        long count = transitionCount;
+        if (count != lastPublishedTransitions) {
+            lastPublishedTransitions = count;
+            setProperty(TRANSITION_COUNT, new Value(count));
+        }
+    }
+
+    /**
+     * Restores the shelved state from the persisted property, unshelving if it expired
+     * while the link was down.
+     */
+    private void restoreShelve() {
+        Value value = getProperty(SHELVED_UNTIL);
+        if ((value == null) || (value.getString() == null) || value.getString().isEmpty()) {
+            return;
+        }
+        Calendar cal = AlarmUtil.getCalendar(System.currentTimeMillis());
+        TimeUtils.decode(value.getString(), cal);
+        long until = cal.getTimeInMillis();
+        AlarmUtil.recycle(cal);
+        long remaining = until - System.currentTimeMillis();
+        synchronized (this) {
+            shelvedUntil = until;
+            if (remaining > 0) {
+                scheduleShelveTimeout(remaining);
+                return;
+            }
+        }
+        unshelve((String) null);
+    }
+
+    /**
+     * Publishes the value properties after the delay, unless a publish is already
+     * pending.  A delay of zero or less means never.
+     */
+    private void schedulePublish(long delay) {
+        if ((delay > 0) && publishScheduled.compareAndSet(false, true)) {
+            getService().getTimingWheel().schedule(publishTask, delay);
+        }
+    }
+
+    /**
+     * Must be synchronized on this.
+     */
+    private void scheduleShelveTimeout(long delay) {
+        if (shelveTimeout != null) {
+            shelveTimeout.cancel();
+        }
+        shelveTimeout = getService().getTimingWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                unshelve((String) null);
+            }
+        }, delay);
+    }
+
+    /**
+     * Action handler.
+     */
+    private void shelve(ActionResult event) {
+        try {
+            Value hours = event.getParameter(HOURS);
+            if ((hours == null) || (hours.getNumber() == null)) {
+                throw new IllegalArgumentException("Missing " + HOURS);
+            }
+            Value user = event.getParameter(USER);
+            shelve((long) (hours.getNumber().doubleValue() * 3600000d),
+                   user == null ? null : user.getString());
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+            AlarmUtil.throwRuntime(x);
+        }
+    }
+
     /**
      * Subscribes to the path.
      */
@@ -372,9 +871,23 @@ public class AlarmWatch extends AbstractAlarmObject
             if ((subscribedPath == null) || subscribedPath.isEmpty()) {
                 return;
             }
-            getService().getRequester().subscribe(subscribedPath, this);
+            setSubscriptionHealth(SUBSCRIPTION_PENDING);
+            getService().getSubscriptions().subscribe(this, subscribedPath);
+        } catch (Exception x) {
+            AlarmUtil.logError(getNode().getPath(), x);
+        }
+    }
+
+    /**
+     * Action handler.
+     */
+    private void unshelve(ActionResult event) {
+        try {
+            Value user = event.getParameter(USER);
+            unshelve(user == null ? null : user.getString());
         } catch (Exception x) {
             AlarmUtil.logError(getNode().getPath(), x);
+            AlarmUtil.throwRuntime(x);
         }
     }
 
@@ -72,6 +72,12 @@ public class Alarming {
          */
         public void addAlarm(AlarmRecord newRecord);
 
+        /**
+         * Record an event that is not a mutation of a record, such as shelving a watch.
+         * The sequence and timestamp should be assigned if not already set.
+         */
+        public void addEvent(AlarmEvent event);
+
         /**
          * Add the given note to the alarm record indicated by the UUID.
          */
@@ -89,6 +95,14 @@ public class Alarming {
          */
         public void deleteAllRecords();
 
+        /**
+         * Delete events of the given alarm class that are older than the given time.
+         *
+         * @param alarmClass Null for the events that don't belong to an alarm class.
+         * @param before     First excluded timestamp.
+         */
+        public void deleteEvents(AlarmClass alarmClass, Calendar before);
+
         /**
          * Delete everything related to the alarm record for the give UUID.
          */
@@ -162,6 +176,15 @@ public class Alarming {
                 String sortBy,
                 boolean sortAscending);
 
+        /**
+         * Returns a cursor of events, in sequence order.  Implementors should expect
+         * concurrent queries and database updates.
+         *
+         * @param sinceSequence Exclusive sequence number to start after.
+         * @param from          Inclusive start time, can be null.
+         */
+        public AlarmEventCursor queryEvents(long sinceSequence, Calendar from);
+
         /**
          * Returns a cursor of open alarms for the given alarm class.  Implementors
          * should expect concurrent queries and database updates.
@@ -170,6 +193,13 @@ public class Alarming {
          */
         public AlarmCursor queryOpenAlarms(AlarmClass alarmClass);
 
+        /**
+         * Return a normal alarm record to the alarm state because the alarm occurred again.
+         * Clears the normal and ack times, increments the occurrence count and sets the
+         * last occurrence to now.
+         */
+        public void reopen(UUID uuid);
+
         /**
          * Return the alarm record to the normal state.
          */
@@ -31,6 +31,8 @@ public class BooleanAlgorithm extends AlarmAlgorithm implements Runnable {
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private volatile Boolean alarmValue; //compiled from the property
+
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
@@ -56,7 +58,11 @@ public class BooleanAlgorithm extends AlarmAlgorithm implements Runnable {
     protected boolean isAlarm(AlarmWatch watch) {
         Value currentValue = watch.getCurrentValue();
         if (currentValue != null) {
-            Boolean alarmValue = getProperty(ALARM_VALUE).getBool();
+            Boolean alarmValue = this.alarmValue;
+            if (alarmValue == null) {
+                alarmValue = getProperty(ALARM_VALUE).getBool();
+                this.alarmValue = alarmValue;
+            }
             Boolean curBool = currentValue.getBool();
             if (curBool != null) {
                 return curBool.equals(alarmValue);
@@ -84,8 +90,11 @@ public class BooleanAlgorithm extends AlarmAlgorithm implements Runnable {
     protected void onPropertyChange(Node child, ValuePair valuePair) {
         if (isSteady()) {
             if (ALARM_VALUE.equals(child.getName())) {
+                alarmValue = getProperty(ALARM_VALUE).getBool();
                 AlarmUtil.enqueue(this);
             }
+        } else {
+            alarmValue = null;
         }
         super.onPropertyChange(child, valuePair);
     }
@@ -0,0 +1,65 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+/**
+ * Combines the inputs of composite watches with an expression.  The source path of the
+ * watch is value and the additional inputs are in1, in2 and so on, for example a fan
+ * commanded on while airflow is low: value == 1 &amp;&amp; in1 &lt; 200
+ * <p>
+ * See AlarmExpression for the syntax.  An invalid expression is logged and never alarms.
+ *
+ * @author Aaron Hansen
+ */
+public class CompositeAlgorithm extends ExpressionAlgorithm {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected String getDefaultExpression() {
+        return "value == 1 && in1 < 200";
+    }
+
+    @Override
+    protected boolean isAlarm(AlarmWatch watch) {
+        AlarmExpression expr = getExpression();
+        if ((expr == null) || !(watch instanceof CompositeWatch)) {
+            return false;
+        }
+        CompositeWatch composite = (CompositeWatch) watch;
+        long now = System.currentTimeMillis();
+        return expr.isTrue(AlarmUtil.toNumeric(watch.getCurrentValue()),
+                           watch.getTimeInCurrentState() / 1000d,
+                           (now - watch.getLastCov()) / 1000d,
+                           composite.getInputValues());
+    }
+
+    /**
+     * Composite watches.
+     */
+    @Override
+    protected Class watchType() {
+        return CompositeWatch.class;
+    }
+
+}
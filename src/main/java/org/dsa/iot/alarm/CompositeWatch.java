@@ -0,0 +1,224 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayList;
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.value.SubscriptionValue;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValuePair;
+
+/**
+ * A watch with additional input paths besides the source path, such as a fan command and
+ * its airflow.  Each input holds its own latest value and a change of any input queues
+ * an evaluation of the watch.  Inputs share requester subscriptions with other watches
+ * on the same path.
+ * <p>
+ * The inputs property is a comma separated list of paths, they are in1, in2 and so on
+ * in the expression of the CompositeAlgorithm.
+ * <p>
+ * The subscription health of the watch is stale while any input is stale, otherwise it
+ * is the health of the source path.
+ *
+ * @author Aaron Hansen
+ */
+public class CompositeWatch extends AlarmWatch {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    static final String INPUTS = "Inputs";
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private volatile Input[] inputs = new Input[0];
+    private volatile String sourceHealth = SUBSCRIPTION_NONE;
+    private double[] values = new double[0]; //only used by the evaluation lane
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Tracks the health of the source path, the watch only reflects it while no input is
+     * stale.
+     */
+    @Override
+    public void setSubscriptionHealth(String health) {
+        sourceHealth = health;
+        updateHealth();
+    }
+
+    /**
+     * Uses the health of the source path rather than the combined health.
+     */
+    @Override
+    public void subscriptionIssued() {
+        String health = sourceHealth;
+        if ((health == SUBSCRIPTION_PENDING) || (health == SUBSCRIPTION_STALE)) {
+            setSubscriptionHealth(SUBSCRIPTION_SUBSCRIBED);
+        }
+    }
+
+    /**
+     * Subscribes the inputs.
+     */
+    @Override
+    protected void doSteady() {
+        super.doSteady();
+        subscribeInputs(getProperty(INPUTS).getString());
+    }
+
+    /**
+     * Un-subscribes the inputs.
+     */
+    @Override
+    protected void doStop() {
+        unsubscribeInputs();
+        super.doStop();
+    }
+
+    @Override
+    protected void initData() {
+        super.initData();
+        initProperty(INPUTS, new Value("")).setWritable(Writable.CONFIG);
+    }
+
+    @Override
+    protected void onPropertyChange(Node node, final ValuePair valuePair) {
+        if (isSteady() && INPUTS.equals(node.getName())) {
+            AlarmUtil.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    subscribeInputs(valuePair.getCurrent().getString());
+                }
+            });
+        }
+        super.onPropertyChange(node, valuePair);
+    }
+
+    /**
+     * The latest numeric value of each input, NaN if unknown.  The returned array is
+     * reused by subsequent calls, this must only be called on the evaluation lane.
+     */
+    double[] getInputValues() {
+        Input[] tmp = inputs;
+        if (values.length != tmp.length) {
+            values = new double[tmp.length];
+        }
+        for (int i = 0; i < tmp.length; i++) {
+            values[i] = tmp[i].value;
+        }
+        return values;
+    }
+
+    /**
+     * Replaces the inputs with the given comma separated paths.
+     */
+    private synchronized void subscribeInputs(String paths) {
+        unsubscribeInputs();
+        if ((paths == null) || paths.trim().isEmpty()) {
+            return;
+        }
+        ArrayList<String> list = Csv.readRow(paths);
+        Input[] tmp = new Input[list.size()];
+        for (int i = 0; i < tmp.length; i++) {
+            tmp[i] = new Input(list.get(i).trim());
+        }
+        inputs = tmp;
+        AlarmSubscriptions subscriptions = getService().getSubscriptions();
+        for (Input input : tmp) {
+            if (!input.path.isEmpty()) {
+                subscriptions.subscribe(input, input.path);
+            }
+        }
+    }
+
+    private synchronized void unsubscribeInputs() {
+        Input[] tmp = inputs;
+        inputs = new Input[0];
+        AlarmSubscriptions subscriptions = getService().getSubscriptions();
+        for (Input input : tmp) {
+            if (!input.path.isEmpty()) {
+                subscriptions.unsubscribe(input, input.path);
+            }
+        }
+        updateHealth();
+    }
+
+    /**
+     * Publishes stale if any input is stale, otherwise the health of the source path.
+     */
+    private void updateHealth() {
+        String health = sourceHealth;
+        for (Input input : inputs) {
+            if (input.stale) {
+                health = SUBSCRIPTION_STALE;
+                break;
+            }
+        }
+        super.setSubscriptionHealth(health);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * One additional input path and its latest value.
+     */
+    private class Input implements AlarmSubscriber {
+
+        String path;
+        volatile boolean stale;
+        volatile double value = Double.NaN;
+
+        Input(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void handle(SubscriptionValue subValue) {
+            value = AlarmUtil.toNumeric(subValue.getValue());
+            if (stale) {
+                stale = false;
+                updateHealth();
+            }
+            if (isValid()) {
+                scheduleEvaluation();
+            }
+        }
+
+        /**
+         * Only a lost subscription, and its recovery, is reflected on the watch.
+         */
+        @Override
+        public void setSubscriptionHealth(String health) {
+            boolean tmp = (health == SUBSCRIPTION_STALE);
+            if (stale != tmp) {
+                stale = tmp;
+                updateHealth();
+            }
+        }
+
+        @Override
+        public void subscriptionIssued() {
+        }
+
+    }
+
+}
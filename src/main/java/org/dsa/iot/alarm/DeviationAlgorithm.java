@@ -0,0 +1,163 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValuePair;
+
+/**
+ * Alarms when a numeric value deviates from its own recent behavior by more than a number
+ * of standard deviations, so thresholds don't have to be tuned for each source.  Each
+ * watch keeps an exponentially weighted mean and variance, smoothing samples is roughly
+ * how many recent covs they represent.  New values are scored before being added, and
+ * nothing alarms until the warm up samples have been received.  The deadband is also in
+ * standard deviations.
+ * <p>
+ * The min deviation, in the units of the value, is a floor for the standard deviation
+ * so a nearly flat signal doesn't alarm on its first small change.  If the deviation is
+ * zero, values are not scored and don't alarm.
+ *
+ * @author Aaron Hansen
+ */
+public class DeviationAlgorithm extends AlarmAlgorithm {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final String DEADBAND = "Deadband";
+    private static final String MIN_DEVIATION = "Min Deviation";
+    private static final String SIGMA = "Sigma";
+    private static final String SMOOTHING_SAMPLES = "Smoothing Samples";
+    private static final String WARM_UP_SAMPLES = "Warm Up Samples";
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private volatile Limits limits;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected String getAlarmMessage(AlarmWatch watch) {
+        String pattern = getProperty(MESSAGE).getString();
+        double zScore = Double.NaN;
+        if (watch instanceof DeviationWatch) {
+            zScore = ((DeviationWatch) watch).getZScore();
+        }
+        return String.format(pattern,
+                             String.valueOf(watch.getCurrentValue()),
+                             String.valueOf(zScore));
+    }
+
+    @Override
+    protected void initData() {
+        super.initData();
+        initProperty(SIGMA, new Value(3.0d)).setWritable(Writable.CONFIG);
+        initProperty(DEADBAND, new Value(0.0d)).setWritable(Writable.CONFIG);
+        initProperty(MIN_DEVIATION, new Value(0.0d)).setWritable(Writable.CONFIG);
+        initProperty(SMOOTHING_SAMPLES, new Value(100)).setWritable(Writable.CONFIG);
+        initProperty(WARM_UP_SAMPLES, new Value(30)).setWritable(Writable.CONFIG);
+        initProperty(MESSAGE, new Value("Value %s is %s standard deviations from the mean"))
+                .setWritable(Writable.CONFIG);
+    }
+
+    @Override
+    protected boolean isAlarm(AlarmWatch watch) {
+        if (!(watch instanceof DeviationWatch)) {
+            return false;
+        }
+        Limits limits = getLimits();
+        DeviationWatch deviation = (DeviationWatch) watch;
+        double zScore = Math.abs(deviation.updateStatistics(limits.alpha,
+                                                              limits.minDeviation));
+        if (Double.isNaN(zScore) || (deviation.getCount() <= limits.warmUp)) {
+            return false;
+        }
+        if (watch.getAlarmState() == AlarmState.NORMAL) {
+            return zScore > (limits.sigma + limits.deadband);
+        }
+        return zScore >= (limits.sigma - limits.deadband);
+    }
+
+    @Override
+    protected void onPropertyChange(Node child, ValuePair valuePair) {
+        if (isSteady()) {
+            String name = child.getName();
+            if (name.equals(DEADBAND)
+                    || name.equals(MIN_DEVIATION)
+                    || name.equals(SIGMA)
+                    || name.equals(SMOOTHING_SAMPLES)
+                    || name.equals(WARM_UP_SAMPLES)) {
+                limits = new Limits(this);
+                AlarmUtil.enqueue(this);
+            }
+        } else {
+            limits = null;
+        }
+        super.onPropertyChange(child, valuePair);
+    }
+
+    /**
+     * Deviation watches.
+     */
+    @Override
+    protected Class watchType() {
+        return DeviationWatch.class;
+    }
+
+    /**
+     * The compiled limit properties.
+     */
+    private Limits getLimits() {
+        Limits ret = limits;
+        if (ret == null) {
+            ret = new Limits(this);
+            limits = ret;
+        }
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An immutable snapshot of the limit properties.
+     */
+    private static class Limits {
+
+        final double alpha;
+        final double deadband;
+        final double minDeviation;
+        final double sigma;
+        final int warmUp;
+
+        Limits(DeviationAlgorithm algorithm) {
+            int smoothing = algorithm.getProperty(SMOOTHING_SAMPLES).getNumber().intValue();
+            alpha = 2d / (Math.max(1, smoothing) + 1);
+            deadband = Math.abs(algorithm.getProperty(DEADBAND).getNumber().doubleValue());
+            minDeviation = Math.abs(
+                    algorithm.getProperty(MIN_DEVIATION).getNumber().doubleValue());
+            sigma = Math.abs(algorithm.getProperty(SIGMA).getNumber().doubleValue());
+            warmUp = Math.max(1, algorithm.getProperty(WARM_UP_SAMPLES).getNumber().intValue());
+        }
+
+    }
+
+}
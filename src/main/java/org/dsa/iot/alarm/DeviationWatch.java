@@ -0,0 +1,90 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+/**
+ * A watch that keeps an exponentially weighted mean and variance of its value in
+ * primitive fields, for the DeviationAlgorithm.  Until the smoothing count is reached,
+ * each sample is weighted 1/n, so the early statistics are the plain mean and variance
+ * rather than being biased towards the first value.
+ *
+ * @author Aaron Hansen
+ */
+public class DeviationWatch extends AlarmWatch {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private int count;
+    private long lastSample = -1; //cov time of the last sample
+    private double mean;
+    private double variance;
+    private double zScore = Double.NaN;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of samples, up to Integer.MAX_VALUE.
+     */
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Deviations of the last sample from the mean before it was added, NaN if unknown.
+     */
+    synchronized double getZScore() {
+        return zScore;
+    }
+
+    /**
+     * If there was a cov since the last sample, scores the current value against the
+     * statistics, then adds it to them.  The standard deviation used for the score is
+     * at least the min deviation.  If it is still zero, such as a signal that was flat
+     * through the warm up, there is no score rather than an infinite one.
+     *
+     * @param alpha        The weight of a new sample once warmed up, 2 / (smoothing + 1).
+     * @param minDeviation Floor for the standard deviation.
+     * @return The z score of the last sample, or NaN.
+     */
+    synchronized double updateStatistics(double alpha, double minDeviation) {
+        long cov = getLastCov();
+        if (cov == lastSample) {
+            return zScore;
+        }
+        double value = AlarmUtil.toNumeric(getCurrentValue());
+        if (Double.isNaN(value)) {
+            return zScore;
+        }
+        lastSample = cov;
+        double diff = value - mean;
+        double deviation = Math.max(Math.sqrt(variance), minDeviation);
+        if ((count == 0) || (deviation <= 0)) {
+            zScore = Double.NaN;
+        } else {
+            zScore = diff / deviation;
+        }
+        if (count < Integer.MAX_VALUE) {
+            count++;
+        }
+        double weight = Math.max(alpha, 1d / count);
+        double incr = weight * diff;
+        mean += incr;
+        variance = (1 - weight) * (variance + (diff * incr));
+        return zScore;
+    }
+
+}
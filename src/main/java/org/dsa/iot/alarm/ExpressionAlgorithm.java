@@ -0,0 +1,119 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValuePair;
+
+/**
+ * Alarms when a boolean expression over the watch value, the seconds in the current
+ * state and the seconds since the last cov is true.  For example:
+ * value &gt; 80 &amp;&amp; value &lt; 200
+ * <p>
+ * The expression is parsed once per change, see AlarmExpression for the syntax.  An
+ * invalid expression is logged and never alarms.
+ *
+ * @author Aaron Hansen
+ */
+public class ExpressionAlgorithm extends AlarmAlgorithm {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final String EXPRESSION = "Expression";
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private volatile AlarmExpression expression;
+    private volatile boolean invalid; //the expression failed to parse
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected String getAlarmMessage(AlarmWatch watch) {
+        String pattern = getProperty(MESSAGE).getString();
+        return String.format(pattern, String.valueOf(watch.getCurrentValue()));
+    }
+
+    /**
+     * The initial value of the expression property.
+     */
+    protected String getDefaultExpression() {
+        return "value > 100";
+    }
+
+    /**
+     * The parsed expression, or null if it is invalid.
+     */
+    protected AlarmExpression getExpression() {
+        AlarmExpression ret = expression;
+        if ((ret != null) || invalid) {
+            return ret;
+        }
+        String text = getProperty(EXPRESSION).getString();
+        try {
+            ret = AlarmExpression.parse(text);
+            expression = ret;
+        } catch (Exception x) {
+            invalid = true;
+            AlarmUtil.logError(getNode().getPath() + " invalid expression", x);
+        }
+        return ret;
+    }
+
+    @Override
+    protected void initData() {
+        super.initData();
+        initProperty(EXPRESSION, new Value(getDefaultExpression()))
+                .setWritable(Writable.CONFIG);
+        initProperty(MESSAGE, new Value("Value = %s")).setWritable(Writable.CONFIG);
+    }
+
+    @Override
+    protected boolean isAlarm(AlarmWatch watch) {
+        AlarmExpression expr = getExpression();
+        if (expr == null) {
+            return false;
+        }
+        double value = AlarmUtil.toNumeric(watch.getCurrentValue());
+        if (Double.isNaN(value)) {
+            //This is not a down device alarm etc, so don't alarm on other conditions.
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        return expr.isTrue(value,
+                           watch.getTimeInCurrentState() / 1000d,
+                           (now - watch.getLastCov()) / 1000d);
+    }
+
+    @Override
+    protected void onPropertyChange(Node child, ValuePair valuePair) {
+        if (EXPRESSION.equals(child.getName())) {
+            expression = null;
+            invalid = false;
+            if (isSteady()) {
+                getExpression();
+                AlarmUtil.enqueue(this);
+            }
+        }
+        super.onPropertyChange(child, valuePair);
+    }
+
+}
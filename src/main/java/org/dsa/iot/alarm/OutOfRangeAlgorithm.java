@@ -33,6 +33,8 @@ public class OutOfRangeAlgorithm extends AlarmAlgorithm {
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private volatile Range range;
+
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
@@ -60,14 +62,15 @@ public class OutOfRangeAlgorithm extends AlarmAlgorithm {
     protected boolean isAlarm(AlarmWatch watch) {
         Value value = watch.getCurrentValue();
         if (value != null) {
-            double val = getNumeric(value);
+            double val = AlarmUtil.toNumeric(value);
             if (Double.isNaN(val)) {
                 //This is not a down device alarm etc, so don't alarm on other conditions.
                 return false;
             }
-            double deadband = Math.abs(getProperty(DEADBAND).getNumber().doubleValue());
-            double min = getProperty(MIN_VALUE).getNumber().doubleValue();
-            double max = getProperty(MAX_VALUE).getNumber().doubleValue();
+            Range range = getRange();
+            double deadband = range.deadband;
+            double min = range.min;
+            double max = range.max;
             if (watch.getAlarmState() == AlarmState.NORMAL) {
                 if (val < (min - deadband)) {
                     return true;
@@ -92,39 +95,52 @@ public class OutOfRangeAlgorithm extends AlarmAlgorithm {
         if (isSteady()) {
             String name = child.getName();
             if (name.equals(MAX_VALUE)) {
+                range = new Range(this);
                 AlarmUtil.enqueue(this);
             } else if (name.equals(MIN_VALUE)) {
+                range = new Range(this);
                 AlarmUtil.enqueue(this);
             } else if (name.equals(DEADBAND)) {
+                range = new Range(this);
                 AlarmUtil.enqueue(this);
             }
+        } else {
+            range = null;
         }
         super.onPropertyChange(child, valuePair);
     }
 
     /**
-     * Try to extract a numeric from the value, even if it's another type.
-     *
-     * @return Double.NaN if a double can't be extracted.
+     * The compiled range properties.
      */
-    private double getNumeric(Value value) {
-        Number num = value.getNumber();
-        if (num != null) {
-            return num.doubleValue();
-        }
-        Boolean bool = value.getBool();
-        if (bool != null) {
-            return bool ? 1 : 0;
+    private Range getRange() {
+        Range ret = range;
+        if (ret == null) {
+            ret = new Range(this);
+            range = ret;
         }
-        String str = value.getString();
-        if (str != null) {
-            try {
-                return Double.parseDouble(str);
-            } catch (Exception x) {
-                AlarmUtil.logError(str, x);
-            }
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An immutable snapshot of the range properties.
+     */
+    private static class Range {
+
+        final double deadband;
+        final double max;
+        final double min;
+
+        Range(OutOfRangeAlgorithm algorithm) {
+            deadband = Math.abs(algorithm.getProperty(DEADBAND).getNumber().doubleValue());
+            max = algorithm.getProperty(MAX_VALUE).getNumber().doubleValue();
+            min = algorithm.getProperty(MIN_VALUE).getNumber().doubleValue();
         }
-        return Double.NaN;
+
     }
 
 }
@@ -0,0 +1,176 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import org.dsa.iot.dslink.node.Node;
+import org.dsa.iot.dslink.node.Writable;
+import org.dsa.iot.dslink.node.value.Value;
+import org.dsa.iot.dslink.node.value.ValuePair;
+
+/**
+ * Alarms when a numeric value rises or falls faster than a maximum rate.  The rate is the
+ * least squares slope of the values received within the window, in units per minute.  A
+ * max rate of zero disables that direction.
+ * <p>
+ * Samples are only added on cov, use the auto update interval so that old samples expire
+ * when the source stops changing.
+ *
+ * @author Aaron Hansen
+ */
+public class RateOfChangeAlgorithm extends AlarmAlgorithm {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constants
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final String DEADBAND = "Deadband";
+    private static final String MAX_FALL_RATE = "Max Fall Rate";
+    private static final String MAX_RISE_RATE = "Max Rise Rate";
+    private static final String MAX_SAMPLES = "Max Samples";
+    private static final String MIN_SAMPLES = "Min Samples";
+    private static final String WINDOW = "Window";
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private volatile Rates rates;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected String getAlarmMessage(AlarmWatch watch) {
+        String pattern = getProperty(MESSAGE).getString();
+        double rate = Double.NaN;
+        if (watch instanceof RateOfChangeWatch) {
+            rate = ((RateOfChangeWatch) watch).getRate() * 60;
+        }
+        return String.format(pattern, String.valueOf(rate));
+    }
+
+    @Override
+    protected void initData() {
+        super.initData();
+        initProperty(WINDOW, new Value(300)).setWritable(Writable.CONFIG)
+                                            .setConfig("unit", new Value("sec"));
+        initProperty(MAX_RISE_RATE, new Value(0.0d)).setWritable(Writable.CONFIG)
+                                                    .setConfig("unit", new Value("/min"));
+        initProperty(MAX_FALL_RATE, new Value(0.0d)).setWritable(Writable.CONFIG)
+                                                    .setConfig("unit", new Value("/min"));
+        initProperty(DEADBAND, new Value(0.0d)).setWritable(Writable.CONFIG)
+                                               .setConfig("unit", new Value("/min"));
+        initProperty(MIN_SAMPLES, new Value(3)).setWritable(Writable.CONFIG);
+        initProperty(MAX_SAMPLES, new Value(100)).setWritable(Writable.CONFIG);
+        initProperty(MESSAGE, new Value("Rate of change: %s/min"))
+                .setWritable(Writable.CONFIG);
+    }
+
+    @Override
+    protected boolean isAlarm(AlarmWatch watch) {
+        if (!(watch instanceof RateOfChangeWatch)) {
+            return false;
+        }
+        Rates rates = getRates();
+        double rate = ((RateOfChangeWatch) watch).updateRate(
+                rates.window, rates.maxSamples, rates.minSamples) * 60;
+        if (Double.isNaN(rate)) {
+            return false;
+        }
+        double deadband = rates.deadband;
+        if (watch.getAlarmState() == AlarmState.NORMAL) {
+            if ((rates.rise > 0) && (rate > (rates.rise + deadband))) {
+                return true;
+            }
+            if ((rates.fall > 0) && (-rate > (rates.fall + deadband))) {
+                return true;
+            }
+        } else {
+            if ((rates.rise > 0) && (rate >= (rates.rise - deadband))) {
+                return true;
+            }
+            if ((rates.fall > 0) && (-rate >= (rates.fall - deadband))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void onPropertyChange(Node child, ValuePair valuePair) {
+        if (isSteady()) {
+            String name = child.getName();
+            if (name.equals(DEADBAND)
+                    || name.equals(MAX_FALL_RATE)
+                    || name.equals(MAX_RISE_RATE)
+                    || name.equals(MAX_SAMPLES)
+                    || name.equals(MIN_SAMPLES)
+                    || name.equals(WINDOW)) {
+                rates = new Rates(this);
+                AlarmUtil.enqueue(this);
+            }
+        } else {
+            rates = null;
+        }
+        super.onPropertyChange(child, valuePair);
+    }
+
+    /**
+     * Rate of change watches.
+     */
+    @Override
+    protected Class watchType() {
+        return RateOfChangeWatch.class;
+    }
+
+    /**
+     * The compiled rate properties.
+     */
+    private Rates getRates() {
+        Rates ret = rates;
+        if (ret == null) {
+            ret = new Rates(this);
+            rates = ret;
+        }
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An immutable snapshot of the rate properties.
+     */
+    private static class Rates {
+
+        final double deadband;
+        final double fall;
+        final int maxSamples;
+        final int minSamples;
+        final double rise;
+        final long window;
+
+        Rates(RateOfChangeAlgorithm algorithm) {
+            deadband = Math.abs(algorithm.getProperty(DEADBAND).getNumber().doubleValue());
+            fall = Math.abs(algorithm.getProperty(MAX_FALL_RATE).getNumber().doubleValue());
+            maxSamples = Math.max(2, algorithm.getProperty(MAX_SAMPLES).getNumber().intValue());
+            minSamples = Math.max(2, algorithm.getProperty(MIN_SAMPLES).getNumber().intValue());
+            rise = Math.abs(algorithm.getProperty(MAX_RISE_RATE).getNumber().doubleValue());
+            window = algorithm.getProperty(WINDOW).getNumber().longValue() * 1000;
+        }
+
+    }
+
+}
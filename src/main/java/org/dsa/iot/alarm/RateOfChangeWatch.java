@@ -0,0 +1,150 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+/**
+ * A watch that keeps recent samples of its value in primitive ring buffers, for the
+ * RateOfChangeAlgorithm.  The least squares slope of the samples in the window is
+ * maintained incrementally: sums are adjusted as samples are added and expire, and
+ * recomputed from the buffer once per capacity updates so rounding error can't build up.
+ *
+ * @author Aaron Hansen
+ */
+public class RateOfChangeWatch extends AlarmWatch {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private long base; //sample times are seconds relative to this
+    private int head;
+    private long lastSample = -1; //cov time of the last sample
+    private double rate = Double.NaN; //per second
+    private int size;
+    private double sumT;
+    private double sumTT;
+    private double sumTV;
+    private double sumV;
+    private long[] times;
+    private int updates;
+    private double[] values;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The last computed slope in units per second, NaN if there weren't enough samples.
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Adds the current value if there was a cov since the last sample, expires samples
+     * older than the window, then returns the slope.
+     *
+     * @param window     Millis.
+     * @param capacity   Maximum samples, the oldest is dropped when full.
+     * @param minSamples Fewer samples than this returns NaN.
+     * @return Units per second, or NaN.
+     */
+    synchronized double updateRate(long window, int capacity, int minSamples) {
+        if ((times == null) || (times.length != capacity)) {
+            times = new long[capacity];
+            values = new double[capacity];
+            head = 0;
+            size = 0;
+            lastSample = -1;
+            recompute();
+        }
+        long cov = getLastCov();
+        if (cov != lastSample) {
+            double value = AlarmUtil.toNumeric(getCurrentValue());
+            if (!Double.isNaN(value)) {
+                lastSample = cov;
+                if (size == capacity) {
+                    removeOldest();
+                }
+                if (size == 0) {
+                    base = cov;
+                }
+                int idx = (head + size) % capacity;
+                times[idx] = cov;
+                values[idx] = value;
+                size++;
+                add(seconds(cov), value, 1);
+                updates++;
+            }
+        }
+        long oldest = System.currentTimeMillis() - window;
+        while ((size > 0) && (times[head] < oldest)) {
+            removeOldest();
+        }
+        if (updates >= capacity) {
+            recompute();
+        }
+        double denom = (size * sumTT) - (sumT * sumT);
+        if ((size < Math.max(2, minSamples)) || (denom <= 0)) {
+            rate = Double.NaN;
+        } else {
+            rate = ((size * sumTV) - (sumT * sumV)) / denom;
+        }
+        return rate;
+    }
+
+    /**
+     * Adds (sign 1) or removes (sign -1) a sample from the sums.
+     */
+    private void add(double t, double v, int sign) {
+        sumT += sign * t;
+        sumTT += sign * t * t;
+        sumTV += sign * t * v;
+        sumV += sign * v;
+    }
+
+    /**
+     * Rebases the times on the oldest sample and recomputes the sums from the buffer.
+     */
+    private void recompute() {
+        updates = 0;
+        sumT = 0;
+        sumTT = 0;
+        sumTV = 0;
+        sumV = 0;
+        if (size == 0) {
+            return;
+        }
+        base = times[head];
+        int idx;
+        for (int i = 0; i < size; i++) {
+            idx = (head + i) % times.length;
+            add(seconds(times[idx]), values[idx], 1);
+        }
+    }
+
+    private void removeOldest() {
+        add(seconds(times[head]), values[head], -1);
+        head = (head + 1) % times.length;
+        size--;
+        updates++;
+        if (size == 0) {
+            recompute();
+        }
+    }
+
+    private double seconds(long time) {
+        return (time - base) / 1000d;
+    }
+
+}
@@ -8,7 +8,7 @@
 
 package org.dsa.iot.alarm;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.value.Value;
@@ -18,6 +18,11 @@ import org.dsa.iot.dslink.util.TimeUtils;
 /**
  * This algorithm creates alarms for sources whose value does not change after a certain
  * period of time. This can be useful for detecting sensor failure.
+ * <p>
+ * Each watch has a timeout on the service timing wheel for its stale deadline
+ * (last cov + period), so only watches whose deadline expires are evaluated and an auto
+ * update interval is not required.  A cov does not touch the timer, when it fires the
+ * deadline is checked again and the timer rescheduled if it moved.
  *
  * @author Aaron Hansen
  */
@@ -35,6 +40,8 @@ public class StaleAlgorithm extends AlarmAlgorithm {
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
+    private volatile long period = -1;
+
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
     ///////////////////////////////////////////////////////////////////////////
@@ -43,6 +50,24 @@ public class StaleAlgorithm extends AlarmAlgorithm {
     // Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Schedules the stale deadline of every watch.
+     */
+    @Override
+    public void doSteady() {
+        super.doSteady();
+        AlarmUtil.enqueue(this);
+    }
+
+    /**
+     * Cancels all stale deadlines.
+     */
+    @Override
+    public void doStop() {
+        super.doStop();
+        cancelTimeouts();
+    }
+
     @Override
     protected String getAlarmMessage(AlarmWatch watch) {
         String pattern = getProperty(MESSAGE).getString();
@@ -61,29 +86,74 @@ public class StaleAlgorithm extends AlarmAlgorithm {
 
     @Override
     protected boolean isAlarm(AlarmWatch watch) {
-        long start = watch.getLastCov();
-        Calendar from = AlarmUtil.getCalendar(start);
-        TimeUtils.addDays(getProperty(STALE_DAYS).getNumber().intValue(), from);
-        TimeUtils.addHours(getProperty(STALE_HOURS).getNumber().intValue(), from);
-        TimeUtils.addMinutes(getProperty(STALE_MINUTES).getNumber().intValue(), from);
-        long end = from.getTimeInMillis();
-        AlarmUtil.recycle(from);
-        return System.currentTimeMillis() > end;
+        return System.currentTimeMillis() > (watch.getLastCov() + getPeriod());
     }
 
     @Override
     protected void onPropertyChange(Node node, ValuePair valuePair) {
-        if (isSteady()) {
-            String name = node.getName();
-            if (name.equals(STALE_DAYS)) {
-                AlarmUtil.enqueue(this);
-            } else if (name.equals(STALE_HOURS)) {
-                AlarmUtil.enqueue(this);
-            } else if (name.equals(STALE_MINUTES)) {
+        String name = node.getName();
+        if (name.equals(STALE_DAYS) || name.equals(STALE_HOURS)
+                || name.equals(STALE_MINUTES)) {
+            period = -1;
+            if (isSteady()) {
+                cancelTimeouts();
                 AlarmUtil.enqueue(this);
             }
         }
         super.onPropertyChange(node, valuePair);
     }
 
+    /**
+     * Evaluates the watch, then makes sure its stale deadline is scheduled.  This is called
+     * for every cov, by updateAll and when a deadline expires.
+     */
+    @Override
+    protected void update(AlarmWatch watch) {
+        super.update(watch);
+        scheduleTimeout(watch);
+    }
+
+    /**
+     * Cancels the timeouts of all watches.
+     */
+    private void cancelTimeouts() {
+        ArrayList<AlarmWatch> watches = new ArrayList<>();
+        getWatches(watches);
+        for (AlarmWatch watch : watches) {
+            watch.cancelStaleTimeout();
+        }
+    }
+
+    /**
+     * The stale period in millis, compiled from the properties on first use after they
+     * change.  Days are treated as 24 hours.
+     */
+    private long getPeriod() {
+        long ret = period;
+        if (ret < 0) {
+            ret = getProperty(STALE_DAYS).getNumber().longValue() * TimeUtils.MILLIS_DAY
+                    + getProperty(STALE_HOURS).getNumber().longValue() * TimeUtils.MILLIS_HOUR
+                    + getProperty(STALE_MINUTES).getNumber().longValue()
+                    * TimeUtils.MILLIS_MINUTE;
+            period = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Schedules a timeout for the stale deadline of the watch, unless one is already
+     * pending or the deadline has already passed (the next cov will schedule it).
+     */
+    private void scheduleTimeout(AlarmWatch watch) {
+        if (!isValid() || !watch.isValid() || !watch.isEnabled()) {
+            return;
+        }
+        long delay = watch.getLastCov() + getPeriod() - System.currentTimeMillis();
+        if (delay < 0) {
+            return;
+        }
+        //Fire just after the deadline, isAlarm is exclusive of it.
+        watch.scheduleStaleTimeout(delay + 1);
+    }
+
 }
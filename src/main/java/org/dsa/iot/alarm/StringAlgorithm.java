@@ -8,7 +8,8 @@
 
 package org.dsa.iot.alarm;
 
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.regex.Pattern;
 import org.dsa.iot.dslink.node.Node;
 import org.dsa.iot.dslink.node.Writable;
 import org.dsa.iot.dslink.node.value.Value;
@@ -17,6 +18,11 @@ import org.dsa.iot.dslink.node.value.ValueType;
 
 /**
  * This algorithm creates alarms based on String values.
+ * <p>
+ * The alarm value and mode are compiled into a condition once per change and swapped in
+ * atomically.  The list modes use a hash set, ContainsAny finds any of a comma separated
+ * list of substrings in a single pass (Aho-Corasick), and Regex finds a precompiled
+ * regular expression anywhere in the value.
  *
  * @author Aaron Hansen
  */
@@ -29,6 +35,7 @@ public class StringAlgorithm extends AlarmAlgorithm implements Runnable {
     private static final String ALARM_VALUE = "Alarm Value";
     private static final String ALARM_VALUE_MODE = "Alarm Value Mode";
     private static final String MODE_CONTAINS = "Contains";
+    private static final String MODE_CONTAINS_ANY = "ContainsAny";
     private static final String MODE_NOT_CONTAINS = "NotContains";
     private static final String MODE_CONTAINED = "Contained";
     private static final String MODE_NOT_CONTAINED = "NotContained";
@@ -38,6 +45,7 @@ public class StringAlgorithm extends AlarmAlgorithm implements Runnable {
     private static final String MODE_STARTSWITH = "StartsWith";
     private static final String MODE_IN_LIST = "InList";
     private static final String MODE_NOT_IN_LIST = "NotInList";
+    private static final String MODE_REGEX = "Regex";
 
     private ValueType ENUM_VALUE_MODE = ValueType.makeEnum(
             MODE_EQUALS,
@@ -49,13 +57,15 @@ public class StringAlgorithm extends AlarmAlgorithm implements Runnable {
             MODE_CONTAINED,
             MODE_NOT_CONTAINED,
             MODE_STARTSWITH,
-            MODE_ENDSWITH);
+            MODE_ENDSWITH,
+            MODE_CONTAINS_ANY,
+            MODE_REGEX);
 
     ///////////////////////////////////////////////////////////////////////////
     // Fields
     ///////////////////////////////////////////////////////////////////////////
 
-    private ArrayList<String> list;
+    private volatile Condition condition;
 
     ///////////////////////////////////////////////////////////////////////////
     // Constructors
@@ -83,57 +93,70 @@ public class StringAlgorithm extends AlarmAlgorithm implements Runnable {
 
     @Override
     protected boolean isAlarm(AlarmWatch watch) {
-        String alarmValue = getProperty(ALARM_VALUE).toString();
-        String valueMode = getProperty(ALARM_VALUE_MODE).toString();
-        String curString = null;
+        Condition cond = condition;
+        if (cond == null) {
+            cond = compile();
+            condition = cond;
+        }
         Value currentValue = watch.getCurrentValue();
         if (currentValue != null) {
-            curString = currentValue.toString();
+            return cond.isAlarm(currentValue.toString());
+        }
+        return cond.isAlarm("null");
+    }
+
+    @Override
+    protected void onPropertyChange(Node child, ValuePair valuePair) {
+        if (isSteady()) {
+            if (ALARM_VALUE.equals(child.getName())) {
+                condition = compile();
+                AlarmUtil.enqueue(this);
+            } else if (ALARM_VALUE_MODE.equals(child.getName())) {
+                condition = compile();
+                AlarmUtil.enqueue(this);
+            }
         } else {
-            curString = "null";
+            condition = null;
         }
+        super.onPropertyChange(child, valuePair);
+    }
+
+    /**
+     * Builds the condition for the current alarm value and mode.
+     */
+    private Condition compile() {
+        String alarmValue = getProperty(ALARM_VALUE).toString();
+        String valueMode = getProperty(ALARM_VALUE_MODE).toString();
         if (MODE_EQUALS.equals(valueMode)) {
-            return curString.equals(alarmValue);
+            return new Compare(Compare.EQUALS, alarmValue, false);
         } else if (MODE_NOTEQUALS.equals(valueMode)) {
-            return !curString.equals(alarmValue);
+            return new Compare(Compare.EQUALS, alarmValue, true);
         } else if (MODE_CONTAINS.equals(valueMode)) {
-            return curString.contains(alarmValue);
+            return new Compare(Compare.CONTAINS, alarmValue, false);
         } else if (MODE_NOT_CONTAINS.equals(valueMode)) {
-            return !curString.contains(alarmValue);
+            return new Compare(Compare.CONTAINS, alarmValue, true);
         } else if (MODE_CONTAINED.equals(valueMode)) {
-            return alarmValue.contains(curString);
+            return new Compare(Compare.CONTAINED, alarmValue, false);
         } else if (MODE_NOT_CONTAINED.equals(valueMode)) {
-            return !alarmValue.contains(curString);
+            return new Compare(Compare.CONTAINED, alarmValue, true);
         } else if (MODE_IN_LIST.equals(valueMode)) {
-            if (list == null) {
-                list = Csv.readRow(alarmValue);
-            }
-            return list.contains(curString);
+            return new InList(new HashSet<>(Csv.readRow(alarmValue)), false);
         } else if (MODE_NOT_IN_LIST.equals(valueMode)) {
-            if (list == null) {
-                list = Csv.readRow(alarmValue);
-            }
-            return !list.contains(curString);
+            return new InList(new HashSet<>(Csv.readRow(alarmValue)), true);
         } else if (MODE_STARTSWITH.equals(valueMode)) {
-            return curString.startsWith(alarmValue);
+            return new Compare(Compare.STARTS_WITH, alarmValue, false);
         } else if (MODE_ENDSWITH.equals(valueMode)) {
-            return curString.endsWith(alarmValue);
-        }
-        return false;
-    }
-
-    @Override
-    protected void onPropertyChange(Node child, ValuePair valuePair) {
-        if (isSteady()) {
-            if (ALARM_VALUE.equals(child.getName())) {
-                list = null;
-                AlarmUtil.enqueue(this);
-            } else if (ALARM_VALUE_MODE.equals(child.getName())) {
-                list = null;
-                AlarmUtil.enqueue(this);
+            return new Compare(Compare.ENDS_WITH, alarmValue, false);
+        } else if (MODE_CONTAINS_ANY.equals(valueMode)) {
+            return new ContainsAny(new AhoCorasick(Csv.readRow(alarmValue)));
+        } else if (MODE_REGEX.equals(valueMode)) {
+            try {
+                return new Regex(Pattern.compile(alarmValue));
+            } catch (Exception x) {
+                AlarmUtil.logError(getNode().getPath(), x);
             }
         }
-        super.onPropertyChange(child, valuePair);
+        return new Compare(Compare.NEVER, alarmValue, false);
     }
 
     /**
@@ -169,6 +192,122 @@ public class StringAlgorithm extends AlarmAlgorithm implements Runnable {
         return ret;
     }
 
-}
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A single string comparison, optionally negated.
+     */
+    private static class Compare implements Condition {
+
+        static final int CONTAINED = 0;
+        static final int CONTAINS = 1;
+        static final int ENDS_WITH = 2;
+        static final int EQUALS = 3;
+        static final int NEVER = 4;
+        static final int STARTS_WITH = 5;
 
+        private boolean negate;
+        private int op;
+        private String operand;
+
+        Compare(int op, String operand, boolean negate) {
+            this.op = op;
+            this.operand = operand;
+            this.negate = negate;
+        }
 
+        @Override
+        public boolean isAlarm(String value) {
+            boolean ret;
+            switch (op) {
+                case CONTAINED:
+                    ret = operand.contains(value);
+                    break;
+                case CONTAINS:
+                    ret = value.contains(operand);
+                    break;
+                case ENDS_WITH:
+                    ret = value.endsWith(operand);
+                    break;
+                case EQUALS:
+                    ret = value.equals(operand);
+                    break;
+                case STARTS_WITH:
+                    ret = value.startsWith(operand);
+                    break;
+                default:
+                    return false;
+            }
+            return ret != negate;
+        }
+
+    }
+
+    /**
+     * An immutable, compiled alarm condition.
+     */
+    private interface Condition {
+
+        boolean isAlarm(String value);
+
+    }
+
+    /**
+     * Alarms if the value contains any of the patterns.
+     */
+    private static class ContainsAny implements Condition {
+
+        private AhoCorasick patterns;
+
+        ContainsAny(AhoCorasick patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public boolean isAlarm(String value) {
+            return patterns.containsAny(value);
+        }
+
+    }
+
+    /**
+     * Hash set membership, optionally negated.
+     */
+    private static class InList implements Condition {
+
+        private boolean negate;
+        private HashSet<String> set;
+
+        InList(HashSet<String> set, boolean negate) {
+            this.set = set;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean isAlarm(String value) {
+            return set.contains(value) != negate;
+        }
+
+    }
+
+    /**
+     * Alarms if the pattern is found anywhere in the value.
+     */
+    private static class Regex implements Condition {
+
+        private Pattern pattern;
+
+        Regex(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean isAlarm(String value) {
+            return pattern.matcher(value).find();
+        }
+
+    }
+
+}
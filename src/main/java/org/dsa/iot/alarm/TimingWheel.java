@@ -0,0 +1,193 @@
+/* THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH REGARD
+ * TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS. IN
+ * NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL
+ * DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER
+ * IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN
+ * CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.dsa.iot.alarm;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timing wheel for large numbers of one-shot timeouts.  Scheduling and
+ * cancelling are constant time, and each tick only visits a single bucket.  Timeouts are
+ * rounded up to the tick resolution and expired tasks are run with AlarmUtil.enqueue, so
+ * they must not assume which thread they are called on.
+ * <p>
+ * The wheel does not own a thread, run() must be called periodically (at the tick
+ * interval).  Late calls are caught up.
+ *
+ * @author Aaron Hansen
+ */
+class TimingWheel implements Runnable {
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Fields
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Timeout[] buckets;
+    private long lastTick; //the last tick processed
+    private int mask;
+    private int size;
+    private long start = System.currentTimeMillis();
+    private long tickMillis;
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Constructors
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param tickMillis The resolution of the wheel.
+     * @param buckets    Will be rounded up to a power of two.
+     */
+    TimingWheel(long tickMillis, int buckets) {
+        int len = 1;
+        while (len < buckets) {
+            len <<= 1;
+        }
+        this.buckets = new Timeout[len];
+        this.mask = len - 1;
+        this.tickMillis = Math.max(1, tickMillis);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The tick interval in millis.
+     */
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * The number of pending timeouts.
+     */
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Advances the wheel to the current time, enqueuing the tasks of expired timeouts.
+     */
+    public void run() {
+        ArrayList<Runnable> expired = null;
+        synchronized (this) {
+            long now = (System.currentTimeMillis() - start) / tickMillis;
+            Timeout timeout, next;
+            while (lastTick < now) {
+                lastTick++;
+                timeout = buckets[(int) (lastTick & mask)];
+                while (timeout != null) {
+                    next = timeout.next;
+                    if (timeout.tick <= lastTick) {
+                        remove(timeout);
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timeout.task);
+                    }
+                    timeout = next;
+                }
+            }
+        }
+        if (expired != null) {
+            for (Runnable task : expired) {
+                AlarmUtil.enqueue(task);
+            }
+        }
+    }
+
+    /**
+     * Schedules the task to be enqueued after the delay.
+     *
+     * @param task  What to run.
+     * @param delay Millis from now.
+     * @return Can be used to cancel the timeout.
+     */
+    synchronized Timeout schedule(Runnable task, long delay) {
+        long deadline = System.currentTimeMillis() + Math.max(0, delay) - start;
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, lastTick + 1);
+        Timeout timeout = new Timeout(this, task, tick);
+        int idx = (int) (tick & mask);
+        timeout.next = buckets[idx];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[idx] = timeout;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Unlinks the timeout from its bucket.
+     *
+     * @return False if it was not pending.
+     */
+    private boolean remove(Timeout timeout) {
+        if (!timeout.pending) {
+            return false;
+        }
+        timeout.pending = false;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.tick & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+        return true;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Inner Classes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A scheduled task.
+     */
+    static class Timeout {
+
+        private Timeout next;
+        private boolean pending = true;
+        private Timeout prev;
+        private Runnable task;
+        private long tick;
+        private TimingWheel wheel;
+
+        Timeout(TimingWheel wheel, Runnable task, long tick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.tick = tick;
+        }
+
+        /**
+         * Prevents the task from being run, if it hasn't already expired.
+         *
+         * @return False if the timeout already expired or was cancelled.
+         */
+        boolean cancel() {
+            synchronized (wheel) {
+                return wheel.remove(this);
+            }
+        }
+
+        /**
+         * True until expired or cancelled.
+         */
+        boolean isPending() {
+            synchronized (wheel) {
+                return pending;
+            }
+        }
+
+    }
+
+}
@@ -21,6 +21,8 @@ import org.dsa.iot.alarm.AckFilter;
 import org.dsa.iot.alarm.AlarmClass;
 import org.dsa.iot.alarm.AlarmConstants;
 import org.dsa.iot.alarm.AlarmCursor;
+import org.dsa.iot.alarm.AlarmEvent;
+import org.dsa.iot.alarm.AlarmEventCursor;
 import org.dsa.iot.alarm.AlarmFilter;
 import org.dsa.iot.alarm.AlarmRecord;
 import org.dsa.iot.alarm.AlarmService;
@@ -34,6 +36,10 @@ import org.dsa.iot.alarm.OpenFilter;
 /**
  * Alarming provider that uses a JDBC data source.  This uses a fixed schema, but
  * leaves obtaining the database connection up to subclasses.
+ * <p>
+ * Methods that insert events reserve a sequence number and complete it after the commit,
+ * or rollback.  Transactions can run concurrently and commit out of order, the service
+ * publishes them (and streams their events) in sequence order.
  *
  * @author Aaron Hansen
  */
@@ -57,8 +63,26 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
                     + "HasNotes boolean not null,"
                     + "IsOpen boolean not null, "
                     + "Watch integer, "
+                    + "Seq bigint default 0, "
+                    + "Occurrences integer default 1, "
+                    + "LastOccurrence timestamp, "
                     + "primary key (Uuid));";
 
+    private static final String createEventTable =
+            "create table if not exists Alarm_Events ("
+                    + "Seq bigint not null, "
+                    + "Timestamp timestamp not null, "
+                    + "EventType varchar(16) not null, "
+                    + "Uuid varchar(36), "
+                    + "SourcePath varchar(254), "
+                    + "AlarmClass varchar(254), "
+                    + "User varchar(256), "
+                    + "Detail longvarchar, "
+                    + "primary key (Seq));";
+
+    private static final String createEventTimeIndex =
+            "create index if not exists Alarm_Events_Time on Alarm_Events (Timestamp);";
+
     private static final String createNoteTable =
             "create table if not exists Alarm_Notes ("
                     + "Uuid varchar(36) not null, "
@@ -83,8 +107,12 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
     public void addAlarm(final AlarmRecord arg) {
         Connection conn = null;
         PreparedStatement stmt = null;
+        AlarmEvent event = null;
+        boolean committed = false;
+        arg.setSequence(nextSequence());
         try {
             conn = getConnection();
+            conn.setAutoCommit(false);
             stmt = conn.prepareStatement(
                     "insert into Alarm_Records "
                             + "(Uuid, "
@@ -98,8 +126,11 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
                             + "Message, "
                             + "HasNotes,"
                             + "IsOpen, "
-                            + "Watch) "
-                            + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?);");
+                            + "Watch, "
+                            + "Seq, "
+                            + "Occurrences, "
+                            + "LastOccurrence) "
+                            + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?);");
             stmt.setString(1, arg.getUuid().toString());
             stmt.setString(2, arg.getSourcePath());
             stmt.setString(3, arg.getAlarmClass().getNode().getName());
@@ -116,56 +147,131 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
             } else {
                 stmt.setInt(12, 0);
             }
+            stmt.setLong(13, arg.getSequence());
+            stmt.setInt(14, arg.getOccurrences());
+            stmt.setTimestamp(15, new Timestamp(arg.getLastOccurrence()));
             stmt.executeUpdate();
+            event = AlarmEvent.make(AlarmEvent.CREATE, arg)
+                              .setTimestamp(arg.getCreatedTime())
+                              .setDetail(arg.getMessage());
+            insertEvent(conn, event);
             conn.commit();
+            committed = true;
         } catch (Exception x) {
+            rollback(conn);
             AlarmUtil.throwRuntime(x);
         } finally {
+            complete(arg.getSequence(), committed ? arg : null, committed ? event : null);
             close(conn, stmt, null);
         }
     }
 
+    @Override
+    public void addEvent(AlarmEvent event) {
+        Connection conn = null;
+        boolean committed = false;
+        event.setSequence(nextSequence());
+        try {
+            if (event.getTimestamp() <= 0) {
+                event.setTimestamp(System.currentTimeMillis());
+            }
+            conn = getConnection();
+            insertEvent(conn, event);
+            committed = true;
+        } catch (Exception x) {
+            AlarmUtil.throwRuntime(x);
+        } finally {
+            complete(event.getSequence(), null, committed ? event : null);
+            close(conn, null, null);
+        }
+    }
+
     @Override
     public void deleteAllRecords() {
         Connection conn = null;
         Statement statement = null;
+        boolean committed = false;
+        AlarmEvent event = new AlarmEvent(AlarmEvent.DELETE_ALL).setSequence(nextSequence());
         try {
             conn = getConnection();
+            conn.setAutoCommit(false);
             statement = conn.createStatement();
             statement.executeUpdate("delete from Alarm_Records;");
             statement.executeUpdate("delete from Alarm_Notes;");
+            event.setTimestamp(System.currentTimeMillis());
+            insertEvent(conn, event);
+            conn.commit();
+            committed = true;
         } catch (Exception x) {
+            rollback(conn);
             AlarmUtil.throwRuntime(x);
         } finally {
+            complete(event.getSequence(), null, committed ? event : null);
             close(conn, statement, null);
         }
     }
 
     @Override
-    public void deleteRecord(UUID uuid) {
+    public void deleteEvents(AlarmClass alarmClass, Calendar before) {
         Connection conn = null;
         PreparedStatement statement = null;
         try {
+            conn = getConnection();
+            if (alarmClass == null) {
+                statement = conn.prepareStatement(
+                        "delete from Alarm_Events where AlarmClass is null and Timestamp < ?;");
+                statement.setTimestamp(1, new Timestamp(before.getTimeInMillis()));
+            } else {
+                statement = conn.prepareStatement(
+                        "delete from Alarm_Events where AlarmClass = ? and Timestamp < ?;");
+                statement.setString(1, alarmClass.getNode().getName());
+                statement.setTimestamp(2, new Timestamp(before.getTimeInMillis()));
+            }
+            statement.executeUpdate();
+        } catch (Exception x) {
+            AlarmUtil.throwRuntime(x);
+        } finally {
+            close(conn, statement, null);
+        }
+    }
+
+    @Override
+    public void deleteRecord(UUID uuid) {
+        //The record lock keeps the copy added to the change log from going stale.
+        synchronized (getRecordLock(uuid)) {
             AlarmRecord rec = getAlarm(uuid);
             if (rec == null) {
                 return;
             }
-            conn = getConnection();
-            statement = conn.prepareStatement(
-                    "delete from Alarm_Records where Uuid = ?;");
-            statement.setString(1, uuid.toString());
-            statement.executeUpdate();
-            if (rec.hasNotes()) {
-                statement.close();
+            Connection conn = null;
+            PreparedStatement statement = null;
+            boolean committed = false;
+            rec.setSequence(nextSequence());
+            AlarmEvent event = AlarmEvent.make(AlarmEvent.DELETE, rec);
+            try {
+                conn = getConnection();
+                conn.setAutoCommit(false);
                 statement = conn.prepareStatement(
-                        "delete from Alarm_Notes where Uuid = ?;");
+                        "delete from Alarm_Records where Uuid = ?;");
                 statement.setString(1, uuid.toString());
                 statement.executeUpdate();
+                if (rec.hasNotes()) {
+                    statement.close();
+                    statement = conn.prepareStatement(
+                            "delete from Alarm_Notes where Uuid = ?;");
+                    statement.setString(1, uuid.toString());
+                    statement.executeUpdate();
+                }
+                insertEvent(conn, event);
+                conn.commit();
+                committed = true;
+            } catch (Exception x) {
+                rollback(conn);
+                AlarmUtil.throwRuntime(x);
+            } finally {
+                complete(rec.getSequence(), committed ? rec : null, committed ? event : null);
+                close(conn, statement, null);
             }
-        } catch (Exception x) {
-            AlarmUtil.throwRuntime(x);
-        } finally {
-            close(conn, statement, null);
         }
     }
 
@@ -219,20 +325,31 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
     }
 
     /**
-     * Creates the database and tables if needed.
+     * Creates the database and tables if needed, adds columns missing from older
+     * databases, and seeds the change sequence from the events table.
      */
     public void initializeDatabase() {
         Connection conn = null;
         Statement statement = null;
+        ResultSet results = null;
         try {
             conn = getConnection();
             statement = conn.createStatement();
             statement.executeUpdate(createAlarmTable);
             statement.executeUpdate(createNoteTable);
+            statement.executeUpdate(createEventTable);
+            statement.executeUpdate(createEventTimeIndex);
+            addColumnIfMissing(conn, "Alarm_Records", "Seq", "bigint default 0");
+            addColumnIfMissing(conn, "Alarm_Records", "Occurrences", "integer default 1");
+            addColumnIfMissing(conn, "Alarm_Records", "LastOccurrence", "timestamp");
+            results = statement.executeQuery("select max(Seq) from Alarm_Events;");
+            if (results.next()) {
+                seedSequence(results.getLong(1));
+            }
         } catch (Exception x) {
             AlarmUtil.throwRuntime(x);
         } finally {
-            close(conn, statement, null);
+            close(conn, statement, results);
         }
     }
 
@@ -285,6 +402,31 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
         return null;
     }
 
+    @Override
+    public AlarmEventCursor queryEvents(long sinceSequence, Calendar from) {
+        Connection conn = null;
+        PreparedStatement statement = null;
+        try {
+            conn = getConnection();
+            if (from == null) {
+                statement = conn.prepareStatement(
+                        "select * from Alarm_Events where Seq > ? order by Seq;");
+            } else {
+                statement = conn.prepareStatement(
+                        "select * from Alarm_Events where Seq > ? and Timestamp >= ? "
+                                + "order by Seq;");
+                statement.setTimestamp(2, new Timestamp(from.getTimeInMillis()));
+            }
+            statement.setLong(1, sinceSequence);
+            ResultSet results = statement.executeQuery();
+            return new MyEventCursor(conn, statement, results);
+        } catch (Exception x) {
+            close(conn, statement, null);
+            AlarmUtil.throwRuntime(x);
+        }
+        return null;
+    }
+
     @Override
     public AlarmCursor queryOpenAlarms(AlarmClass alarmClass) {
         try {
@@ -340,57 +482,124 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
         }
     }
 
+    /**
+     * Inserts the note, updates the record and inserts the event in a single transaction.
+     */
+    @Override
+    protected void addNote(Note note, AlarmRecord record, AlarmEvent event) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);
+            stmt = conn.prepareStatement("insert into Alarm_Notes "
+                                                 + "(Uuid, Timestamp, User, Note) VALUES (?,?,?,?);");
+            stmt.setString(1, note.getUUID().toString());
+            stmt.setTimestamp(2, new Timestamp(note.getTimestamp()));
+            stmt.setString(3, note.getUser());
+            stmt.setString(4, note.getText());
+            stmt.executeUpdate();
+            stmt.close();
+            stmt = conn.prepareStatement(
+                    "update Alarm_Records set HasNotes = true, Seq = ? where Uuid = ?;");
+            stmt.setLong(1, record.getSequence());
+            stmt.setString(2, note.getUUID().toString());
+            stmt.executeUpdate();
+            insertEvent(conn, event);
+            conn.commit();
+        } catch (Exception x) {
+            rollback(conn);
+            AlarmUtil.throwRuntime(x);
+        } finally {
+            close(conn, stmt, null);
+        }
+    }
+
     /**
      * Subclasses are responsible for obtaining a connection.
      */
     protected abstract Connection getConnection();
 
+    /**
+     * Inserts a row into the events table using the given connection, the caller is
+     * responsible for committing.
+     */
+    protected void insertEvent(Connection conn, AlarmEvent event) throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(
+                    "insert into Alarm_Events "
+                            + "(Seq, Timestamp, EventType, Uuid, SourcePath, AlarmClass, "
+                            + "User, Detail) VALUES (?,?,?,?,?,?,?,?);");
+            stmt.setLong(1, event.getSequence());
+            stmt.setTimestamp(2, new Timestamp(event.getTimestamp()));
+            stmt.setString(3, event.getType());
+            if (event.getUuid() != null) {
+                stmt.setString(4, event.getUuid().toString());
+            } else {
+                stmt.setString(4, null);
+            }
+            stmt.setString(5, event.getSourcePath());
+            stmt.setString(6, event.getAlarmClass());
+            stmt.setString(7, event.getUser());
+            stmt.setString(8, event.getDetail());
+            stmt.executeUpdate();
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
-     * <p>This only updates NormalTime, AckTime, AckUser, and IsOpen</p>
+     * <p>This updates all mutable columns: NormalTime, AckTime, AckUser, HasNotes, IsOpen,
+     * Seq, Occurrences and LastOccurrence.</p>
      */
     @Override
     protected void saveRecord(AlarmRecord arg) {
-        StringBuilder buf = new StringBuilder("update Alarm_Records set");
-        //Indexes in prepared statements start at 1.
-        int normalIdx = 0;
-        int ackTimeIdx = 0;
-        int ackUserIdx = 0;
-        int currentIdx = 0;
-        if (arg.getNormalTime() > 0) {
-            normalIdx = ++currentIdx;
-            buf.append(" NormalTime = ?,");
-        }
-        if (arg.getAckTime() > 0) {
-            ackTimeIdx = ++currentIdx;
-            buf.append(" AckTime = ?,");
-        }
-        if (arg.getAckUser() != null) {
-            ackUserIdx = ++currentIdx;
-            buf.append(" AckUser = ?,");
-        }
-        int isOpenIdx = ++currentIdx;
-        int uuidIdx = ++currentIdx;
-        buf.append(" IsOpen = ? where Uuid = ?");
+        saveRecord(arg, null);
+    }
+
+    /**
+     * Updates the record and inserts the event (if not null) in a single transaction.
+     */
+    @Override
+    protected void saveRecord(AlarmRecord arg, AlarmEvent event) {
         Connection conn = null;
         PreparedStatement stmt = null;
         try {
             conn = getConnection();
-            stmt = conn.prepareStatement(buf.toString());
-            if (normalIdx > 0) {
-                stmt.setTimestamp(normalIdx, new Timestamp(arg.getNormalTime()));
-            }
-            if (ackTimeIdx > 0) {
-                stmt.setTimestamp(ackTimeIdx, new Timestamp(arg.getAckTime()));
-            }
-            if (ackUserIdx > 0) {
-                stmt.setString(ackUserIdx, arg.getAckUser());
-            }
-            stmt.setBoolean(isOpenIdx, arg.isOpen());
-            stmt.setString(uuidIdx, arg.getUuid().toString());
+            conn.setAutoCommit(false);
+            //Every mutable column is written so that reopening can clear them, this is
+            //safe because callers hold the record lock from the read through this write.
+            stmt = conn.prepareStatement(
+                    "update Alarm_Records set "
+                            + "NormalTime = ?, "
+                            + "AckTime = ?, "
+                            + "AckUser = ?, "
+                            + "HasNotes = ?, "
+                            + "IsOpen = ?, "
+                            + "Seq = ?, "
+                            + "Occurrences = ?, "
+                            + "LastOccurrence = ? "
+                            + "where Uuid = ?;");
+            stmt.setTimestamp(1, new Timestamp(arg.getNormalTime()));
+            stmt.setTimestamp(2, new Timestamp(arg.getAckTime()));
+            stmt.setString(3, arg.getAckUser());
+            stmt.setBoolean(4, arg.hasNotes());
+            stmt.setBoolean(5, arg.isOpen());
+            stmt.setLong(6, arg.getSequence());
+            stmt.setInt(7, arg.getOccurrences());
+            stmt.setTimestamp(8, new Timestamp(arg.getLastOccurrence()));
+            stmt.setString(9, arg.getUuid().toString());
             stmt.executeUpdate();
+            if (event != null) {
+                insertEvent(conn, event);
+            }
             conn.commit();
         } catch (Exception x) {
+            rollback(conn);
             AlarmUtil.throwRuntime(x);
         } finally {
             close(conn, stmt, null);
@@ -507,6 +716,10 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
         rec.setAckUser(res.getString("AckUser"));
         rec.setMessage(res.getString("Message"));
         rec.setHasNotes(res.getBoolean("HasNotes"));
+        rec.setSequence(res.getLong("Seq"));
+        rec.setOccurrences(Math.max(1, res.getInt("Occurrences")));
+        ts = res.getTimestamp("LastOccurrence");
+        rec.setLastOccurrence(ts == null ? 0 : ts.getTime());
         rec.setAlarmWatch(null);
         int handle = res.getInt("Watch");
         if (handle > 0) {
@@ -519,6 +732,24 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
         }
     }
 
+    /**
+     * Sets the AlarmEvent fields using the current position of the result set.
+     */
+    protected void toEvent(ResultSet res, AlarmEvent event) throws SQLException {
+        event.setSequence(res.getLong("Seq"));
+        Timestamp ts = res.getTimestamp("Timestamp");
+        if (ts != null) {
+            event.setTimestamp(ts.getTime());
+        }
+        event.setType(res.getString("EventType"));
+        String str = res.getString("Uuid");
+        event.setUuid(str == null ? null : UUID.fromString(str));
+        event.setSourcePath(res.getString("SourcePath"));
+        event.setAlarmClass(res.getString("AlarmClass"));
+        event.setUser(res.getString("User"));
+        event.setDetail(res.getString("Detail"));
+    }
+
     /**
      * Sets the Note fields using the current position of the result set.
      */
@@ -563,6 +794,38 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
         }
     }
 
+    /**
+     * Adds the column to a table created by an older version.  The probe query is used
+     * because not all databases support 'add column if not exists'.
+     */
+    private static void addColumnIfMissing(Connection conn, String table, String column,
+                                           String definition) throws SQLException {
+        Statement statement = conn.createStatement();
+        try {
+            statement.executeQuery("select " + column + " from " + table + " where 1=0;")
+                     .close();
+        } catch (SQLException x) {
+            statement.executeUpdate(
+                    "alter table " + table + " add column " + column + ' ' + definition + ';');
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Rolls back a failed transaction, failures are only logged so the original exception
+     * is the one reported.
+     */
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (Exception x) {
+                AlarmUtil.logError(conn.toString(), x);
+            }
+        }
+    }
+
     private String getColumnName(String displayName) {
         if (displayName.equals(UUID_STR)) {
             return "Uuid";
@@ -676,6 +939,47 @@ public abstract class JdbcProvider extends AbstractProvider implements AlarmCons
 
     }
 
+    private class MyEventCursor extends AlarmEventCursor {
+
+        private Connection conn;
+        private ResultSet results;
+        private Statement statement;
+
+        MyEventCursor(Connection conn, Statement statement, ResultSet results) {
+            this.conn = conn;
+            this.statement = statement;
+            this.results = results;
+        }
+
+        @Override
+        public void close() {
+            JdbcProvider.close(conn, statement, results);
+            conn = null;
+            statement = null;
+            results = null;
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                if (results == null) {
+                    return false;
+                }
+                if (results.next()) {
+                    toEvent(results, this);
+                    return true;
+                } else {
+                    close();
+                }
+            } catch (Exception x) {
+                AlarmUtil.logError("AlarmEventCursor.next", x);
+                close();
+                AlarmUtil.throwRuntime(x);
+            }
+            return false;
+        }
+    }
+
     private class MyNoteCursor extends NoteCursor {
 
         private Connection conn;